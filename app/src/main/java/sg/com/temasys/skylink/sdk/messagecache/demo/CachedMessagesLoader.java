@@ -0,0 +1,228 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sg.com.temasys.skylink.sdk.messagecache.SkylinkMessageCache;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageMerger;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+/**
+ * Loads locally cached messages of a Skylink Room in the I/O lane of {@link TaskExecutors}, page by page.
+ * The newest messages from the {@link MessageJournal} are delivered first, as they are read without decoding JSON.
+ * Then the newest page of the Skylink message cache is delivered so it can be displayed right away, older pages follow it.
+ * Starting a new load cancels the load of the previously requested room.
+ * Can also prefetch rooms into {@link RoomTimelineCache} at low priority, one task at a time with loads;
+ * prefetching steps aside whenever a load is pending.
+ */
+public class CachedMessagesLoader {
+    public static final int PAGE_SIZE = 50;
+    public static final int JOURNAL_PAGE_SIZE = 50;
+
+    private final TaskExecutors.SerialExecutor mExecutor;
+    private final AtomicInteger mGeneration; // Incremented on every load/cancel, stale loads stop when it changes
+    private final AtomicInteger mPrefetchGeneration; // Incremented on every prefetch/cancelPrefetch
+    private final AtomicInteger mPendingLoadCount; // Loads queued or running, prefetching yields while non zero
+    private final RoomSyncState mRoomSyncState;
+    private final MessageJournal mMessageJournal;
+
+    public interface Callback {
+        /**
+         * Called in a worker thread for each loaded page.
+         * @param roomName Skylink Room name the page belongs to
+         * @param page Cached messages, in ascending timestamp order
+         * @param isNewestPage True for the first (newest) page of the room, i.e. the journaled messages
+         */
+        void onCachedMessagesPageLoaded(String roomName, MessageStore page, boolean isNewestPage);
+
+        /**
+         * Called in a worker thread after all pages of the room have been delivered.
+         * Not called if the load was cancelled or failed.
+         * @param roomName Skylink Room name
+         */
+        void onCachedMessagesLoaded(String roomName);
+    }
+
+    public CachedMessagesLoader(RoomSyncState roomSyncState, MessageJournal messageJournal) {
+        mExecutor = TaskExecutors.getInstance().newSerialExecutor(TaskExecutors.Lane.IO, TaskExecutors.Priority.HIGH);
+        mGeneration = new AtomicInteger();
+        mPrefetchGeneration = new AtomicInteger();
+        mPendingLoadCount = new AtomicInteger();
+        mRoomSyncState = roomSyncState;
+        mMessageJournal = messageJournal;
+    }
+
+    /**
+     * Starts loading cached messages of the given room, cancelling any previous load.
+     * @param roomName Skylink Room name
+     * @param callback Receives loaded pages, newest page first
+     */
+    public void load(String roomName, Callback callback) {
+        final int generation = mGeneration.incrementAndGet();
+        mPendingLoadCount.incrementAndGet();
+        mExecutor.execute(() -> {
+            try {
+                if (isCancelled(generation)) return;
+
+                // Newest sent and received messages, available even before the Skylink message cache catches up
+                MessageStore journaledMessages = mMessageJournal.readLast(roomName, JOURNAL_PAGE_SIZE);
+                callback.onCachedMessagesPageLoaded(roomName, journaledMessages, true);
+                if (isCancelled(generation)) return;
+
+                JSONArray cachedMessages = readCachedMessages(roomName);
+                if (cachedMessages == null) return;
+
+                // Walk from the newest message backwards, one page at a time
+                int end = cachedMessages.length();
+                while (end > 0 && !isCancelled(generation)) {
+                    int start = Math.max(0, end - PAGE_SIZE);
+                    MessageStore page = MessageStore.fromJson(cachedMessages, start, end);
+                    callback.onCachedMessagesPageLoaded(roomName, page, false);
+                    end = start;
+                }
+                if (!isCancelled(generation)) callback.onCachedMessagesLoaded(roomName);
+            } finally {
+                mPendingLoadCount.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Starts decoding the cached messages of the given rooms into {@link RoomTimelineCache} at low priority,
+     * cancelling any previous prefetch. Rooms already in the timeline cache are skipped.
+     * @param roomNames Skylink Room names, prefetched in the given order
+     */
+    public void prefetch(String[] roomNames) {
+        final int generation = mPrefetchGeneration.incrementAndGet();
+        for (String roomName : roomNames) {
+            mExecutor.execute(TaskExecutors.Priority.LOW, new PrefetchTask(roomName, generation));
+        }
+    }
+
+    /**
+     * Cancels the ongoing load, if any.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Cancels the ongoing prefetch, if any.
+     */
+    public void cancelPrefetch() {
+        mPrefetchGeneration.incrementAndGet();
+    }
+
+    /**
+     * Cancels the ongoing load and prefetch, and drops the queued ones.
+     */
+    public void shutdown() {
+        cancel();
+        cancelPrefetch();
+        mExecutor.shutdown();
+    }
+
+    private boolean isCancelled(int generation) {
+        return generation != mGeneration.get();
+    }
+
+    /**
+     * Reads cached messages of the room and records which messages are held locally,
+     * so that they are not decoded again from the server history.
+     * @return Cached messages in ascending timestamp order, or null if message caching is disabled or reading failed
+     */
+    private JSONArray readCachedMessages(String roomName) {
+        if (!SkylinkMessageCache.getInstance().isEnabled()) return null;
+
+        JSONArray cachedMessages;
+        try {
+            cachedMessages = SkylinkMessageCache.getInstance().getReadableSession(roomName).getCachedMessages();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (cachedMessages == null) return new JSONArray();
+
+        int length = cachedMessages.length();
+        if (length > 0) {
+            JSONObject oldest = cachedMessages.optJSONObject(0);
+            JSONObject newest = cachedMessages.optJSONObject(length - 1);
+            if (oldest != null && newest != null) {
+                mRoomSyncState.onCachedMessagesRead(roomName,
+                        oldest.optLong(Constants.MSG_TIMESTAMP, Long.MAX_VALUE), newest.optLong(Constants.MSG_TIMESTAMP, Long.MIN_VALUE));
+            }
+        }
+        return cachedMessages;
+    }
+
+    /**
+     * Decodes the cached messages of one room into {@link RoomTimelineCache}, a page at a time.
+     * When a load is pending, the task re-queues itself behind it and resumes from where it stopped.
+     */
+    private class PrefetchTask implements Runnable {
+        private final String mRoomName;
+        private final int mTaskGeneration;
+        private JSONArray mCachedMessages;
+        private MessageStore mTimeline;
+        private int mStart; // Next message to decode
+
+        private PrefetchTask(String roomName, int generation) {
+            mRoomName = roomName;
+            mTaskGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            if (mCachedMessages == null) {
+                if (isPrefetchCancelled() || RoomTimelineCache.getInstance().contains(mRoomName)) return;
+                if (yieldToLoads()) return;
+
+                mCachedMessages = readCachedMessages(mRoomName);
+                if (mCachedMessages == null) return;
+                mTimeline = new MessageStore(mCachedMessages.length());
+            }
+
+            // Oldest page first, so that pages are appended
+            int length = mCachedMessages.length();
+            while (mStart < length) {
+                if (isPrefetchCancelled()) return;
+                if (yieldToLoads()) return;
+
+                int end = Math.min(length, mStart + PAGE_SIZE);
+                mTimeline.addAll(MessageStore.fromJson(mCachedMessages, mStart, end));
+                mStart = end;
+            }
+
+            // Newest sent and received messages may not have reached the Skylink message cache yet
+            MessageMerger.merge(mTimeline, mMessageJournal.readLast(mRoomName, JOURNAL_PAGE_SIZE));
+
+            // A load of the room may have cached its (more complete) timeline meanwhile
+            if (!isPrefetchCancelled() && RoomTimelineCache.getInstance().putIfAbsent(mRoomName, mTimeline)) {
+                Log.d(Constants.LOG_TAG, "Prefetched " + length + " cached messages of room " + mRoomName + ".");
+            }
+        }
+
+        private boolean isPrefetchCancelled() {
+            return mTaskGeneration != mPrefetchGeneration.get();
+        }
+
+        /**
+         * Re-queues this task behind pending loads, if any.
+         * @return True if the task has been re-queued and should stop running now
+         */
+        private boolean yieldToLoads() {
+            if (mPendingLoadCount.get() == 0) return false;
+            try {
+                mExecutor.execute(TaskExecutors.Priority.LOW, this);
+            } catch (RejectedExecutionException e) {
+                // Loader shut down meanwhile, the prefetch is dropped
+            }
+            return true;
+        }
+    }
+}
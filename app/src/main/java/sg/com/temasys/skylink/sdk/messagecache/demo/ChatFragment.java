@@ -9,22 +9,22 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import org.json.JSONArray;
-
 import java.util.Date;
 
-import sg.com.temasys.skylink.sdk.messagecache.SkylinkMessageCache;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
 import sg.com.temasys.skylink.sdk.messagecache.demo.ui.ChatUi;
 
 /**
  * Mainly responsible for creating chat UI and handling events occur when user interact with the chat UI.
  * Uses an {@link ChatUi} instance to create the chat view and change the properties of the chat view.
- * Uses an {@link ChatPresenter} instance to interact with Skylink SDK when handling user events.
+ * Attaches the chat view to the process-wide {@link ChatSession}, which owns the {@link ChatPresenter}
+ * that interacts with Skylink SDK, so that the connection and timeline survive the recreation of this fragment.
  */
 public class ChatFragment extends Fragment implements ChatUi.UserEvents {
     private ChatUi mChatUi;
-    private ChatPresenter mChatPresenter;
-    private String mActiveRoomName; // Holds the user selected room name
+    private ChatSession mChatSession;
+    private volatile String mSelectedRoomName; // Holds the room name last selected in the spinner
+    private CachedMessagesLoader mCachedMessagesLoader;
 
     @Nullable
     @Override
@@ -35,33 +35,46 @@ public class ChatFragment extends Fragment implements ChatUi.UserEvents {
         // Set constant set of room names to the chat UI
         mChatUi.setRoomNames(getResources().getStringArray(R.array.room_names));
 
-        // Execute chat presenter init in the worker thread
-        Util.getThreadPool().execute(() -> {
-            mChatPresenter = new ChatPresenter(getContext(), mChatUi);
-        });
+        // Init cached messages loader, sharing the room sync state of the chat session
+        mChatSession = ChatSession.getInstance(getContext());
+        mCachedMessagesLoader = new CachedMessagesLoader(mChatSession.getRoomSyncState(), MessageJournal.getInstance(getContext()));
+
+        // Attach to the chat session, starting it or restoring the previous view's room, peers and messages
+        String restoredRoomName = mChatSession.attach(mChatUi);
+        if (restoredRoomName != null) {
+            // Already connected (or connecting) to the room, do not select it again when the spinner reports it
+            mSelectedRoomName = restoredRoomName;
+
+            // Previous view destroyed before all cached messages of the room were loaded? Then load them again
+            if (!RoomTimelineCache.getInstance().contains(restoredRoomName)) loadCachedMessages(restoredRoomName);
+        }
 
         // Return the char view
         return mChatUi.getView();
     }
 
     @Override
-    public void onDestroyView() {
-        // Execute chat presenter deinit in the worker thread
-        Util.getThreadPool().execute(() -> {
-            // Connected?
-            if (mChatPresenter.isConnected()) {
-                mChatPresenter.processDisconnectedLayout(); // Disconnect from Skylink room (blocks until disconnects)
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // After the first frame, warm up the timelines of all rooms in the background,
+        // so that switching to a room shows its cached messages without reading them from disk
+        view.post(() -> {
+            if (mCachedMessagesLoader != null) {
+                mCachedMessagesLoader.prefetch(getResources().getStringArray(R.array.room_names));
             }
-            mChatPresenter.processExit();
-            mChatPresenter = null;
         });
+    }
 
-        // Deinit chat UI
-        mChatUi.clearMessages();
-        mChatUi = null;
+    @Override
+    public void onDestroyView() {
+        // Stop loading and prefetching cached messages
+        mCachedMessagesLoader.shutdown();
+        mCachedMessagesLoader = null;
 
-        // Stop the worker thread
-        Util.shutdownThreadPool();
+        // Detach chat UI, the chat session keeps the connection and the timeline until its idle timeout
+        mChatSession.detach(mChatUi);
+        mChatUi = null;
 
         super.onDestroyView();
     }
@@ -72,47 +85,23 @@ public class ChatFragment extends Fragment implements ChatUi.UserEvents {
      */
     @Override
     public void onNewRoomSelected(String newRoomName) {
-        mChatUi.clearMessages();
-
-        // Message caching enabled?
-        // Then get locally cached messages if available and display them right away
-        if (SkylinkMessageCache.getInstance().isEnabled() && mChatPresenter != null) {
-            JSONArray cachedMessages = null;
-            try {
-                cachedMessages = mChatPresenter.getCachedMessages(newRoomName);
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new AssertionError(e.getMessage());
-            }
-            if (cachedMessages != null && cachedMessages.length() > 0) {
-                mChatUi.onStoredMessagesReceived(cachedMessages);
-            }
+        // Room restored from the chat session, or selected again? Then it is already displayed
+        if (newRoomName.equals(mSelectedRoomName)) return;
+
+        mSelectedRoomName = newRoomName;
+
+        // Room's decoded timeline in memory? Then display it right away without reading the message cache
+        MessageStore timeline = RoomTimelineCache.getInstance().get(newRoomName);
+        if (timeline != null) {
+            mCachedMessagesLoader.cancel();
+            mChatUi.showTimeline(newRoomName, timeline);
+        } else {
+            mChatUi.showTimeline(newRoomName, new MessageStore());
+            loadCachedMessages(newRoomName);
         }
 
-        // Execute in worker thread
-        Util.getThreadPool().execute(() -> {
-            mChatUi.setWaiting(true);
-
-            // Already connected to a Skylink room?
-            if (mActiveRoomName != null) {
-                mChatPresenter.processDisconnectedLayout(); // Disconnect from Skylink room (blocks until disconnects)
-            }
-            mActiveRoomName = newRoomName;
-            mChatPresenter.processConnectedLayout(mActiveRoomName); // Connect to Skylink room (blocks until connects)
-
-            // User has not closed the app?
-            // Then get stored messages from the server
-            if (mChatUi != null && mChatPresenter != null) {
-                mChatUi.setWaiting(false);
-
-                // Connected? Then get stored messages from server
-                if (mChatPresenter.isConnected()) {
-                    getActivity().runOnUiThread(() -> {
-                        mChatPresenter.processGetStoredSeverMessages();
-                    });
-                }
-            }
-        });
+        // Connect to the room, then get its stored messages
+        mChatSession.selectRoom(newRoomName);
     }
 
     /**
@@ -121,7 +110,42 @@ public class ChatFragment extends Fragment implements ChatUi.UserEvents {
      */
     @Override
     public void onSendPressed(String message) {
-        mChatPresenter.processSendMessage(message); // Send the message
-        mChatUi.onMessageSent(mChatPresenter.getPeerId(), message, new Date().getTime()); // Update chat UI with sent message
+        ChatPresenter chatPresenter = mChatSession.getPresenter();
+        if (chatPresenter == null) return; // Chat session not started yet
+
+        long timestamp = new Date().getTime();
+        // Send the message, then update chat UI with sent message
+        if (chatPresenter.processSendMessage(message, timestamp)) {
+            mChatUi.onMessageSent(chatPresenter.getPeerId(), message, timestamp);
+        } else {
+            mChatUi.onMessageRejected();
+        }
+    }
+
+    /**
+     * Loads locally cached messages in the background (if message caching enabled), newest page first,
+     * merging them into the displayed timeline.
+     * Loading a new room cancels the load of the previously selected room.
+     * @param roomName Skylink Room name
+     */
+    private void loadCachedMessages(String roomName) {
+        mCachedMessagesLoader.load(roomName, new CachedMessagesLoader.Callback() {
+            @Override
+            public void onCachedMessagesPageLoaded(String roomName, MessageStore page, boolean isNewestPage) {
+                ChatUi chatUi = mChatUi;
+                // Drop pages of a room that is no longer selected, ChatUi checks again once in the main thread
+                if (chatUi != null && roomName.equals(mSelectedRoomName)) {
+                    chatUi.onCachedMessagesPageLoaded(roomName, page, isNewestPage);
+                }
+            }
+
+            @Override
+            public void onCachedMessagesLoaded(String roomName) {
+                ChatUi chatUi = mChatUi;
+                if (chatUi != null && roomName.equals(mSelectedRoomName)) {
+                    chatUi.onCachedMessagesLoaded(roomName);
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,357 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageMerger;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerChange;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerSnapshot;
+import sg.com.temasys.skylink.sdk.messagecache.demo.ui.ChatUi;
+import sg.com.temasys.skylink.sdk.messagecache.demo.ui.MessagesRecyclerViewAdapter;
+
+/**
+ * Process-wide chat session, outliving the chat view, e.g. across configuration changes.
+ * Owns the {@link ChatPresenter} (and so the Skylink connection), the room being connected,
+ * the remote peers and the decoded timeline of the displayed room.
+ * A new chat view attaches with {@link #attach(ChatUi)} and is restored from the session state right away,
+ * so that its first frame shows the same room, peers and messages as the previous view without reconnecting.
+ * Events received while no view is attached are kept in the session state.
+ * Once the last view is detached, the session is torn down after an idle timeout
+ * (R.integer.chat_session_idle_timeout_ms) unless a view attaches again meanwhile.
+ * The session's tasks run in its own {@link TaskExecutors.Scope}, so that the tasks still pending
+ * when it is torn down are cancelled. A session restarted before the previous presenter has exited
+ * holds its tasks back until then, as both presenters share the SDK's Skylink connection.
+ * Must be used in the main thread, except {@link #getPresenter()}.
+ */
+public class ChatSession implements ChatPresenter.SkylinkEvents {
+    private static final String TAG = ChatSession.class.getSimpleName();
+
+    private static ChatSession INSTANCE;
+
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private final RoomSyncState mRoomSyncState;
+    private final long mIdleTimeoutMs;
+    private final Runnable mTeardown = this::teardown;
+
+    private volatile ChatPresenter mChatPresenter; // Created and disposed in the network lane
+    private volatile String mSelectedRoomName; // Room last selected by the user
+    private ConnectionStateMachine.Request mRoomSwitchRequest; // Pending connection to the selected room, accessed in the network lane
+    private boolean mIsStarted; // Presenter created or being created
+    private TaskExecutors.Scope mTaskScope; // Tasks of the started session, closed when it is torn down
+    private boolean mIsTearingDown; // Previous presenter not exited yet
+    private final List<Runnable> mTasksAfterTeardown; // Tasks held back until the previous presenter has exited
+
+    // Session state, restored to a newly attached view
+    private ChatUi mChatUi; // Attached view, null if detached
+    private boolean mIsWaiting;
+    private Constants.ConnectionStates mConnectionState;
+    private String mConnectionRoomName;
+    private PeerSnapshot mPeers;
+    private String mTimelineRoomName; // Room of the timeline displayed last
+    private MessageStore mTimeline; // Timeline displayed last, held while detached only
+    private final Map<Long, MessagesRecyclerViewAdapter.SendState> mSendStates; // Messages not sent yet, by timestamp
+
+    /**
+     * Gets the process-wide chat session.
+     */
+    public static synchronized ChatSession getInstance(Context context) {
+        if (INSTANCE == null) INSTANCE = new ChatSession(context.getApplicationContext());
+        return INSTANCE;
+    }
+
+    private ChatSession(Context context) {
+        mContext = context;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mRoomSyncState = new RoomSyncState(context);
+        mIdleTimeoutMs = context.getResources().getInteger(R.integer.chat_session_idle_timeout_ms);
+        mSendStates = new HashMap<>();
+        mTasksAfterTeardown = new ArrayList<>();
+    }
+
+    /**
+     * Attaches a chat view, cancelling a pending teardown, and restores the session state to it.
+     * Starts the session if it is not started yet.
+     * @return Room of the restored timeline, or null if there is nothing to restore
+     */
+    public String attach(ChatUi chatUi) {
+        mMainHandler.removeCallbacks(mTeardown);
+        mChatUi = chatUi;
+
+        if (!mIsStarted) {
+            mIsStarted = true;
+            mTaskScope = TaskExecutors.getInstance().newScope(TAG);
+            // Execute chat presenter init in the network lane, ahead of room connections
+            execute(TaskExecutors.Priority.HIGH, () -> {
+                mChatPresenter = new ChatPresenter(mContext, this, mRoomSyncState);
+            });
+            return null;
+        }
+
+        // Restore in one go, the timeline last, as restoring the peers and connection state also sets the status
+        String roomName = mTimelineRoomName;
+        chatUi.setWaiting(mIsWaiting);
+        if (mPeers != null) chatUi.onRemotePeersChanged(null, mPeers, Collections.<PeerChange>emptyList()); // Not a delta, shown as a whole
+        if (mConnectionState != null) chatUi.onConnectionStateChanged(mConnectionState, mConnectionRoomName);
+        if (roomName != null) chatUi.restoreTimeline(roomName, mTimeline, mSendStates);
+        mTimeline = null; // Held by the view from now on
+        Log.d(TAG, "Attached to the session of room " + roomName);
+        return roomName;
+    }
+
+    /**
+     * Detaches the chat view, keeping its timeline, and schedules the teardown of the session.
+     */
+    public void detach(ChatUi chatUi) {
+        if (mChatUi != chatUi) return; // Superseded by a newer view
+
+        mTimelineRoomName = chatUi.getRoomName();
+        mTimeline = chatUi.getTimeline();
+        mChatUi = null;
+        mMainHandler.postDelayed(mTeardown, mIdleTimeoutMs);
+    }
+
+    /**
+     * Gets the chat presenter.
+     * @return Chat presenter, or null if not created yet or torn down
+     */
+    public ChatPresenter getPresenter() {
+        return mChatPresenter;
+    }
+
+    public RoomSyncState getRoomSyncState() {
+        return mRoomSyncState;
+    }
+
+    /**
+     * Connects to the selected Skylink Room, disconnecting from the previous room first, then gets its stored messages.
+     * Does not block.
+     * @param roomName Skylink Room name
+     */
+    public void selectRoom(String roomName) {
+        mSelectedRoomName = roomName;
+
+        // Execute in the network lane, after the chat presenter init
+        execute(TaskExecutors.Priority.NORMAL, () -> {
+            // Another room selected meanwhile, or torn down? Then skip this one
+            ChatPresenter chatPresenter = mChatPresenter;
+            if (!roomName.equals(mSelectedRoomName) || chatPresenter == null) return;
+
+            setWaiting(true);
+
+            // Cancel the pending switch to the previously selected room, if it has not connected yet
+            if (mRoomSwitchRequest != null) mRoomSwitchRequest.cancel();
+
+            // Connect to Skylink room, disconnecting from the previous room first. Does not block.
+            mRoomSwitchRequest = chatPresenter.processConnectedLayout(roomName, new ConnectionStateMachine.Callback() {
+                @Override
+                public void onSucceeded(String roomName) {
+                    // Session not torn down? Then get stored messages from the server, even if no view is attached
+                    if (mChatPresenter == chatPresenter) {
+                        setWaiting(false);
+                        chatPresenter.processGetStoredSeverMessages();
+                    }
+                }
+
+                @Override
+                public void onFailed(String roomName, String reason) {
+                    // Keep waiting if superseded by another selected room
+                    if (roomName.equals(mSelectedRoomName)) setWaiting(false);
+                }
+            });
+        });
+    }
+
+    // ChatPresenter.SkylinkEvents implementation, forwarded to the attached view
+
+    @Override
+    public void onConnectionStateChanged(Constants.ConnectionStates newConnectionState, String roomName) {
+        runOnMain(() -> {
+            mConnectionState = newConnectionState;
+            mConnectionRoomName = roomName;
+            if (mChatUi != null) mChatUi.onConnectionStateChanged(newConnectionState, roomName);
+        });
+    }
+
+    @Override
+    public void onRemotePeersChanged(PeerSnapshot previousPeers, PeerSnapshot peers, List<PeerChange> changes) {
+        mPeers = peers;
+        if (mChatUi != null) mChatUi.onRemotePeersChanged(previousPeers, peers, changes);
+    }
+
+    @Override
+    public void onStoredMessagesReceived(String roomName, MessageStore storedMessages) {
+        runOnMain(() -> {
+            if (mChatUi != null) {
+                mChatUi.onStoredMessagesReceived(roomName, storedMessages);
+            } else {
+                mergeIntoTimeline(roomName, storedMessages);
+            }
+        });
+    }
+
+    @Override
+    public void onRemoteMessagesReceived(String roomName, MessageStore messages) {
+        if (mChatUi != null) {
+            mChatUi.onRemoteMessagesReceived(roomName, messages);
+        } else {
+            mergeIntoTimeline(roomName, messages);
+        }
+    }
+
+    @Override
+    public void onMessageSendingFailed() {
+        runOnMain(() -> {
+            if (mChatUi != null) mChatUi.onMessageSendingFailed();
+        });
+    }
+
+    @Override
+    public void onMessageSendStateChanged(long timestamp, String message, PendingMessageQueue.SendState state) {
+        // Only kept until sent, a restored view shows sent messages without their state
+        if (state == PendingMessageQueue.SendState.SENT) {
+            mSendStates.remove(timestamp);
+        } else {
+            mSendStates.put(timestamp, new MessagesRecyclerViewAdapter.SendState(message, state));
+        }
+        if (mChatUi != null) mChatUi.onMessageSendStateChanged(timestamp, message, state);
+    }
+
+    @Override
+    public void onMessageSendingThrottled(boolean isThrottled) {
+        if (mChatUi != null) mChatUi.onMessageSendingThrottled(isThrottled);
+    }
+
+    private void setWaiting(boolean isWaiting) {
+        runOnMain(() -> {
+            mIsWaiting = isWaiting;
+            if (mChatUi != null) mChatUi.setWaiting(isWaiting);
+        });
+    }
+
+    /**
+     * Merges messages received while detached into the timeline of the detached view, if they belong to its room.
+     */
+    private void mergeIntoTimeline(String roomName, MessageStore messages) {
+        if (mTimeline == null || !TextUtils.equals(mTimelineRoomName, roomName)) {
+            // Room of the messages not displayed, so its cached timeline misses them (already journaled):
+            // drop it, the room's history is loaded and fetched again on the next visit
+            if (roomName != null) RoomTimelineCache.getInstance().invalidate(roomName);
+            return;
+        }
+
+        if (MessageMerger.merge(mTimeline, messages).length > 0) {
+            RoomTimelineCache.getInstance().onTimelineChanged(mTimelineRoomName);
+        }
+    }
+
+    /**
+     * Tears down the session once no view has been attached for the idle timeout.
+     */
+    private void teardown() {
+        if (mChatUi != null) return;
+
+        Log.d(TAG, "No chat view attached for " + mIdleTimeoutMs + " ms, tearing down the session");
+        mIsStarted = false;
+        TaskExecutors.Scope taskScope = mTaskScope;
+        mTaskScope = null;
+        mSelectedRoomName = null;
+        mIsWaiting = false;
+        mConnectionState = null;
+        mConnectionRoomName = null;
+        mPeers = null;
+        mTimelineRoomName = null;
+        mTimeline = null;
+        mSendStates.clear();
+
+        // Restarted while the previous presenter is still exiting? Then this session's presenter was never created
+        if (mIsTearingDown) {
+            mTasksAfterTeardown.clear();
+            taskScope.close();
+            return;
+        }
+        mIsTearingDown = true;
+
+        // Execute chat presenter deinit in the network lane, after the running task if any.
+        // Then cancel the session's pending tasks.
+        taskScope.execute(TaskExecutors.Lane.NETWORK, TaskExecutors.Priority.HIGH, () -> {
+            taskScope.close();
+            ChatPresenter chatPresenter = mChatPresenter;
+            mChatPresenter = null;
+            mRoomSwitchRequest = null;
+            if (chatPresenter == null) { // Never initialized
+                runOnMain(this::onTornDown);
+                return;
+            }
+
+            // Disconnect from Skylink room (if connected), then dispose the connection. Does not block.
+            chatPresenter.processDisconnectedLayout(new ConnectionStateMachine.Callback() {
+                @Override
+                public void onSucceeded(String roomName) {
+                    exit(chatPresenter);
+                }
+
+                @Override
+                public void onFailed(String roomName, String reason) {
+                    exit(chatPresenter);
+                }
+            });
+        });
+    }
+
+    /**
+     * Disposes the Skylink connection of a torn down presenter in the network lane,
+     * then lets a restarted session proceed.
+     */
+    private void exit(ChatPresenter chatPresenter) {
+        TaskExecutors.getInstance().execute(TaskExecutors.Lane.NETWORK, TaskExecutors.Priority.HIGH, () -> {
+            try {
+                chatPresenter.processExit();
+            } finally {
+                runOnMain(this::onTornDown);
+            }
+        });
+    }
+
+    /**
+     * Submits the tasks of a session restarted while the previous presenter was exiting, in order.
+     */
+    private void onTornDown() {
+        mIsTearingDown = false;
+        List<Runnable> tasks = new ArrayList<>(mTasksAfterTeardown);
+        mTasksAfterTeardown.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * Executes a task of the session in the network lane, once the previous presenter has exited.
+     */
+    private void execute(TaskExecutors.Priority priority, Runnable task) {
+        TaskExecutors.Scope taskScope = mTaskScope;
+        if (mIsTearingDown) {
+            mTasksAfterTeardown.add(() -> taskScope.execute(TaskExecutors.Lane.NETWORK, priority, task));
+        } else {
+            taskScope.execute(TaskExecutors.Lane.NETWORK, priority, task);
+        }
+    }
+
+    private void runOnMain(Runnable action) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            action.run();
+        } else {
+            mMainHandler.post(action);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Non-blocking state machine of the connection to a Skylink Room.
+ * DISCONNECTED or FAILED -> CONNECTING -> CONNECTED or FAILED, CONNECTING or CONNECTED -> DISCONNECTING -> DISCONNECTED.
+ * Connect and disconnect requests return right away, their outcome is reported to a {@link Callback}.
+ * Every transition is bounded by a timeout and requests can be cancelled.
+ * Connecting to another room while connected first disconnects, then connects once disconnected;
+ * the connection is prepared meanwhile and only the latest requested room is connected.
+ * Actions queued with {@link #runWhenConnected(Runnable)} run as soon as the connection is established.
+ * Requests can be made from any thread, transitions and callbacks run in the main thread.
+ */
+public class ConnectionStateMachine {
+    private static final String TAG = ConnectionStateMachine.class.getSimpleName();
+
+    private final Handler mMainHandler;
+    private final Transport mTransport;
+    private final Listener mListener;
+    private final long mTimeoutMs;
+
+    private volatile Constants.ConnectionStates mState;
+    private volatile String mRoomName; // Room of the current state
+    private Request mConnectRequest; // Connect request in progress, or waiting for a disconnection
+    private final List<Request> mDisconnectRequests;
+    private final List<Request> mConnectedActions;
+    private Runnable mTimeout; // Timeout of the ongoing transition
+    private boolean mIsShutdown;
+
+    /**
+     * Performs the actual connection changes, called in the main thread.
+     * Must not block: the changes run in a worker, in call order, and their results are reported back
+     * with {@link #onConnected(boolean)} and {@link #onDisconnected()}.
+     */
+    public interface Transport {
+        /**
+         * Prepares connecting to the room (e.g. connection string and config) while still disconnecting.
+         */
+        void prepare(String roomName);
+        void connect(String roomName);
+        void disconnect();
+    }
+
+    public interface Listener {
+        /**
+         * Called in the main thread on every state change.
+         */
+        void onConnectionStateChanged(Constants.ConnectionStates newState, String roomName);
+    }
+
+    public interface Callback {
+        /**
+         * Called in the main thread when the requested state has been reached.
+         */
+        void onSucceeded(String roomName);
+
+        /**
+         * Called in the main thread when the requested state could not be reached,
+         * e.g. connection failed, timed out or was superseded by another request.
+         */
+        void onFailed(String roomName, String reason);
+    }
+
+    /**
+     * Pending connect or disconnect request, or queued action.
+     */
+    public class Request {
+        private final String mRequestRoomName;
+        private final Callback mCallback;
+        private final Runnable mAction;
+        private volatile boolean mIsCancelled;
+
+        private Request(String roomName, Callback callback, Runnable action) {
+            mRequestRoomName = roomName;
+            mCallback = callback;
+            mAction = action;
+        }
+
+        /**
+         * Cancels the request, its callback or action is not called afterwards.
+         * Cancelling an ongoing connection attempt disconnects.
+         */
+        public void cancel() {
+            mIsCancelled = true;
+            post(() -> onRequestCancelled(this));
+        }
+
+        public boolean isCancelled() {
+            return mIsCancelled;
+        }
+    }
+
+    public ConnectionStateMachine(Transport transport, Listener listener, long timeoutMs) {
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mTransport = transport;
+        mListener = listener;
+        mTimeoutMs = timeoutMs;
+        mState = Constants.ConnectionStates.DISCONNECTED;
+        mDisconnectRequests = new ArrayList<>();
+        mConnectedActions = new ArrayList<>();
+    }
+
+    public Constants.ConnectionStates getState() {
+        return mState;
+    }
+
+    public String getRoomName() {
+        return mRoomName;
+    }
+
+    public boolean isConnected() {
+        return mState == Constants.ConnectionStates.CONNECTED;
+    }
+
+    /**
+     * Connects to the given room, disconnecting from the current room first if needed.
+     * Supersedes any previous connect request.
+     * @param roomName Skylink Room name
+     * @param callback Notified when connected or when connecting failed, can be null
+     */
+    public Request connect(String roomName, Callback callback) {
+        Request request = new Request(roomName, callback, null);
+        post(() -> handleConnect(request));
+        return request;
+    }
+
+    /**
+     * Disconnects from the current room. Supersedes any pending connect request.
+     * @param callback Notified when disconnected, can be null
+     */
+    public Request disconnect(Callback callback) {
+        Request request = new Request(null, callback, null);
+        post(() -> handleDisconnect(request));
+        return request;
+    }
+
+    /**
+     * Runs the action in the main thread as soon as connected, right away if already connected.
+     */
+    public Request runWhenConnected(Runnable action) {
+        Request request = new Request(null, null, action);
+        post(() -> {
+            if (request.mIsCancelled || mIsShutdown) return;
+            if (isConnected()) {
+                action.run();
+            } else {
+                mConnectedActions.add(request);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Reports the result of a connection attempt. Can be called from any thread.
+     */
+    public void onConnected(boolean isSuccessful) {
+        post(() -> {
+            if (mState != Constants.ConnectionStates.CONNECTING) return; // Late result of an abandoned attempt
+            cancelTimeout();
+
+            if (!isSuccessful) {
+                setState(Constants.ConnectionStates.FAILED, mRoomName);
+                failConnectRequest("Failed to connect");
+                return;
+            }
+
+            setState(Constants.ConnectionStates.CONNECTED, mRoomName);
+            Request request = mConnectRequest;
+            mConnectRequest = null;
+            if (request != null && !request.mIsCancelled && request.mCallback != null) request.mCallback.onSucceeded(mRoomName);
+
+            List<Request> actions = new ArrayList<>(mConnectedActions);
+            mConnectedActions.clear();
+            for (Request action : actions) {
+                if (!action.mIsCancelled) action.mAction.run();
+            }
+        });
+    }
+
+    /**
+     * Reports a disconnection, requested or not. Can be called from any thread.
+     */
+    public void onDisconnected() {
+        post(this::handleDisconnected);
+    }
+
+    /**
+     * Drops pending requests and queued actions, and stops handling further requests.
+     */
+    public void shutdown() {
+        post(() -> {
+            mIsShutdown = true;
+            cancelTimeout();
+            mConnectRequest = null;
+            mDisconnectRequests.clear();
+            mConnectedActions.clear();
+        });
+    }
+
+    private void handleConnect(Request request) {
+        if (request.mIsCancelled || mIsShutdown) return;
+
+        // A newer connect request supersedes the pending one
+        if (mConnectRequest != null) failConnectRequest("Superseded by room " + request.mRequestRoomName);
+        mConnectRequest = request;
+
+        switch (mState) {
+            case CONNECTING:
+            case CONNECTED:
+                if (!request.mRequestRoomName.equals(mRoomName)) {
+                    startDisconnect(); // Connects once disconnected
+                    mTransport.prepare(request.mRequestRoomName);
+                } else if (isConnected()) {
+                    mConnectRequest = null;
+                    if (request.mCallback != null) request.mCallback.onSucceeded(mRoomName);
+                }
+                break;
+            case DISCONNECTING:
+                mTransport.prepare(request.mRequestRoomName); // Connects once disconnected
+                break;
+            case DISCONNECTED:
+            case FAILED:
+                startConnect();
+                break;
+        }
+    }
+
+    private void handleDisconnect(Request request) {
+        if (request.mIsCancelled || mIsShutdown) return;
+
+        if (mConnectRequest != null) failConnectRequest("Superseded by disconnection");
+
+        switch (mState) {
+            case CONNECTING:
+            case CONNECTED:
+                mDisconnectRequests.add(request);
+                startDisconnect();
+                break;
+            case DISCONNECTING:
+                mDisconnectRequests.add(request);
+                break;
+            case DISCONNECTED:
+            case FAILED:
+                if (request.mCallback != null) request.mCallback.onSucceeded(mRoomName);
+                break;
+        }
+    }
+
+    private void handleDisconnected() {
+        cancelTimeout();
+        if (mState == Constants.ConnectionStates.DISCONNECTED) return;
+        setState(Constants.ConnectionStates.DISCONNECTED, mRoomName);
+
+        List<Request> requests = new ArrayList<>(mDisconnectRequests);
+        mDisconnectRequests.clear();
+        for (Request request : requests) {
+            if (!request.mIsCancelled && request.mCallback != null) request.mCallback.onSucceeded(mRoomName);
+        }
+
+        // Connect to the room requested meanwhile
+        if (mConnectRequest != null && !mIsShutdown) startConnect();
+    }
+
+    private void onRequestCancelled(Request request) {
+        mConnectedActions.remove(request);
+        mDisconnectRequests.remove(request);
+        if (request == mConnectRequest) {
+            mConnectRequest = null;
+            // Abandon the ongoing connection attempt
+            if (mState == Constants.ConnectionStates.CONNECTING) startDisconnect();
+        }
+    }
+
+    private void startConnect() {
+        String roomName = mConnectRequest.mRequestRoomName;
+        setState(Constants.ConnectionStates.CONNECTING, roomName);
+        scheduleTimeout(() -> {
+            Log.w(TAG, "Timed out connecting to room " + roomName);
+            setState(Constants.ConnectionStates.FAILED, roomName);
+            failConnectRequest("Timed out");
+            mTransport.disconnect(); // Abandon the attempt
+        });
+        mTransport.connect(roomName);
+    }
+
+    private void startDisconnect() {
+        setState(Constants.ConnectionStates.DISCONNECTING, mRoomName);
+        scheduleTimeout(() -> {
+            Log.w(TAG, "Timed out disconnecting from room " + mRoomName + ", assuming disconnected");
+            handleDisconnected();
+        });
+        mTransport.disconnect();
+    }
+
+    private void failConnectRequest(String reason) {
+        Request request = mConnectRequest;
+        mConnectRequest = null;
+        if (request != null && !request.mIsCancelled && request.mCallback != null) {
+            request.mCallback.onFailed(request.mRequestRoomName, reason);
+        }
+    }
+
+    private void setState(Constants.ConnectionStates state, String roomName) {
+        mState = state;
+        mRoomName = roomName;
+        mListener.onConnectionStateChanged(state, roomName);
+    }
+
+    private void scheduleTimeout(Runnable onTimeout) {
+        cancelTimeout();
+        mTimeout = () -> {
+            mTimeout = null;
+            onTimeout.run();
+        };
+        mMainHandler.postDelayed(mTimeout, mTimeoutMs);
+    }
+
+    private void cancelTimeout() {
+        if (mTimeout != null) {
+            mMainHandler.removeCallbacks(mTimeout);
+            mTimeout = null;
+        }
+    }
+
+    private void post(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mMainHandler.post(runnable);
+        }
+    }
+}
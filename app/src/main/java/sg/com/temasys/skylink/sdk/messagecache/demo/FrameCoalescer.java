@@ -0,0 +1,50 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs an action in the main thread at most once per display frame, however many times it is requested
+ * in between, e.g. to deliver changes collected from any thread as one update.
+ * Requests made while the action runs schedule it again for the next frame.
+ * Can be requested from any thread.
+ */
+public class FrameCoalescer {
+    private final AtomicBoolean mIsScheduled;
+    private final Handler mMainHandler;
+    private final Runnable mAction;
+    private final Choreographer.FrameCallback mFrameCallback;
+    private final Runnable mPostFrameCallback;
+
+    public FrameCoalescer(Runnable action) {
+        mIsScheduled = new AtomicBoolean(false);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mAction = action;
+        mFrameCallback = frameTimeNanos -> run();
+        // Choreographer is per looper thread, so frame callbacks are posted from the main thread
+        mPostFrameCallback = () -> Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    /**
+     * Requests the action to run at the next frame, unless it is already scheduled.
+     */
+    public void request() {
+        // Only the first request after a run schedules the next one
+        if (mIsScheduled.compareAndSet(false, true)) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mPostFrameCallback.run();
+            } else {
+                mMainHandler.post(mPostFrameCallback);
+            }
+        }
+    }
+
+    private void run() {
+        // Clear the flag before running, so that requests made while running schedule another frame
+        mIsScheduled.set(false);
+        mAction.run();
+    }
+}
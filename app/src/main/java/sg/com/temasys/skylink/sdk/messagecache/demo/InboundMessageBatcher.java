@@ -0,0 +1,113 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+/**
+ * Coalesces inbound messages into batches, delivered in the main thread at most once per display frame.
+ * Messages can be added from any thread, they are collected on a lock-free queue until the next frame,
+ * see {@link FrameCoalescer}.
+ */
+public class InboundMessageBatcher {
+    private final Queue<InboundMessage> mQueue;
+    private final FrameCoalescer mFlush;
+    private final Callback mCallback;
+    private volatile boolean mIsStopped;
+
+    // Statistics
+    private final AtomicLong mReceivedCount;
+    private final AtomicLong mBatchCount;
+
+    public interface Callback {
+        /**
+         * Called in the main thread with messages received since the previous batch, once per room
+         * if the room changed in between.
+         * @param roomName Skylink Room the messages were received in
+         * @param messages Received messages, in arrival order
+         */
+        void onMessageBatch(String roomName, MessageStore messages);
+    }
+
+    private static class InboundMessage {
+        private final String roomName;
+        private final String senderId;
+        private final String data;
+        private final long timestamp;
+
+        private InboundMessage(String roomName, String senderId, String data, long timestamp) {
+            this.roomName = roomName;
+            this.senderId = senderId;
+            this.data = data;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public InboundMessageBatcher(Callback callback) {
+        mQueue = new ConcurrentLinkedQueue<>();
+        mFlush = new FrameCoalescer(this::flush);
+        mCallback = callback;
+        mReceivedCount = new AtomicLong();
+        mBatchCount = new AtomicLong();
+    }
+
+    /**
+     * Queues a received message for the next batch. Can be called from any thread.
+     */
+    public void add(String roomName, String senderId, String data, long timestamp) {
+        if (mIsStopped) return;
+
+        mQueue.offer(new InboundMessage(roomName, senderId, data, timestamp));
+        mReceivedCount.incrementAndGet();
+        mFlush.request();
+    }
+
+    /**
+     * Drops queued messages and stops delivering batches.
+     */
+    public void stop() {
+        mIsStopped = true;
+        mQueue.clear();
+    }
+
+    /**
+     * Gets the average number of messages delivered per batch.
+     */
+    private double getCoalescingRatio() {
+        long batchCount = mBatchCount.get();
+        return batchCount == 0 ? 0 : (double) mReceivedCount.get() / batchCount;
+    }
+
+    private void flush() {
+        if (mIsStopped) return;
+
+        String roomName = null;
+        MessageStore batch = new MessageStore();
+        InboundMessage message;
+        while ((message = mQueue.poll()) != null) {
+            // Messages of a room left meanwhile are delivered in their own batch
+            if (batch.size() > 0 && !TextUtils.equals(message.roomName, roomName)) {
+                deliver(roomName, batch);
+                batch = new MessageStore();
+            }
+            roomName = message.roomName;
+            batch.add(message.senderId, message.data, message.timestamp);
+        }
+        if (batch.size() > 0) deliver(roomName, batch);
+    }
+
+    private void deliver(String roomName, MessageStore batch) {
+        mBatchCount.incrementAndGet();
+        if (batch.size() > 1) {
+            Log.d(Constants.LOG_TAG, "Coalesced " + batch.size() + " inbound messages into one batch (average "
+                    + getCoalescingRatio() + " messages per batch).");
+        }
+
+        mCallback.onMessageBatch(roomName, batch);
+    }
+}
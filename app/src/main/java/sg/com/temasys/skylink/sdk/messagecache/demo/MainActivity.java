@@ -30,4 +30,11 @@ public class MainActivity extends AppCompatActivity {
                     .commit();
         }
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Shrink in-memory room timelines under memory pressure
+        RoomTimelineCache.getInstance().onTrimMemory(level);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+/**
+ * Append-only binary journal of sent and received messages, one file per Skylink Room.
+ * Lets the newest messages of a room be displayed on cold start, before connecting to Skylink
+ * and before the Skylink message cache or the server have caught up.
+ * Appends are group committed: messages appended within {@link #COMMIT_DELAY_MS} are written
+ * and forced to disk together, one commit at a time in the {@link TaskExecutors.Lane#IO} lane.
+ * The tail of a journal is read through a memory mapping.
+ *
+ * A record is {length, timestamp, sender ID length, sender ID, data length, data, length},
+ * the length of the record being repeated at its end so that the journal can be read backwards.
+ * Thread safe.
+ */
+public class MessageJournal {
+    private static final String TAG = MessageJournal.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "message_journal";
+    private static final String FILE_EXTENSION = ".journal";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int COMMIT_DELAY_MS = 50;
+    private static final int COMMIT_RETRY_DELAY_MS = 1000; // After a failed write
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024; // Journal is compacted when it grows beyond
+    private static final int COMPACT_KEEP_COUNT = 1000; // Newest messages kept when compacting
+    private static final int RECORD_OVERHEAD = 4 + 8 + 4 + 4 + 4; // Lengths and timestamp
+
+    private static MessageJournal INSTANCE;
+
+    private final File mDirectory;
+    private final TaskExecutors.SerialExecutor mWriter; // Commits one at a time
+    private final Handler mMainHandler; // Delays commits
+    private final Runnable mCommitNow;
+    private final Runnable mCommit;
+    private final Map<String, List<byte[]>> mPendingRecords; // Room name -> records not committed yet
+    private final Object mFileLock; // Held while records move from mPendingRecords to the journal, and while reading both
+    private final Map<String, FileChannel> mChannels; // Room name -> open journal, accessed in mWriter only
+
+    /**
+     * Gets the process-wide journal.
+     */
+    public static synchronized MessageJournal getInstance(Context context) {
+        if (INSTANCE == null) INSTANCE = new MessageJournal(new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME));
+        return INSTANCE;
+    }
+
+    private MessageJournal(File directory) {
+        mDirectory = directory;
+        mWriter = TaskExecutors.getInstance().newSerialExecutor(TaskExecutors.Lane.IO, TaskExecutors.Priority.NORMAL);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mCommitNow = this::commit;
+        mCommit = () -> mWriter.execute(mCommitNow);
+        mPendingRecords = new HashMap<>();
+        mFileLock = new Object();
+        mChannels = new HashMap<>();
+    }
+
+    /**
+     * Appends a message to the room's journal. Committed to disk shortly after, together with other appended messages.
+     * @param roomName Skylink Room name
+     * @param senderId Sender's peer ID
+     * @param data Message
+     * @param timestamp Message timestamp
+     */
+    public void append(String roomName, String senderId, String data, long timestamp) {
+        if (roomName == null) return;
+
+        byte[] record = encode(senderId, data, timestamp);
+        boolean isCommitScheduled;
+        synchronized (mPendingRecords) {
+            isCommitScheduled = !mPendingRecords.isEmpty();
+            List<byte[]> records = mPendingRecords.get(roomName);
+            if (records == null) {
+                records = new ArrayList<>();
+                mPendingRecords.put(roomName, records);
+            }
+            records.add(record);
+        }
+
+        // Only the first append after a commit schedules the next one
+        if (!isCommitScheduled) mMainHandler.postDelayed(mCommit, COMMIT_DELAY_MS);
+    }
+
+    /**
+     * Reads the newest messages of the room's journal, including messages that are appended but not committed yet.
+     * @param roomName Skylink Room name
+     * @param maxCount Maximum number of messages to read
+     * @return Newest messages in ascending timestamp order, empty if the room has no journal
+     */
+    public MessageStore readLast(String roomName, int maxCount) {
+        long startTime = SystemClock.elapsedRealtime();
+        MessageStore messages = new MessageStore(maxCount);
+
+        // Committed records are in the file, the others still pending: read both while none is moving
+        synchronized (mFileLock) {
+            File file = getFile(roomName);
+            if (file.length() > 0) {
+                FileInputStream inputStream = null;
+                try {
+                    inputStream = new FileInputStream(file);
+                    FileChannel channel = inputStream.getChannel();
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    int[] recordStarts = findLastRecords(buffer, maxCount);
+                    for (int recordStart : recordStarts) {
+                        decode(buffer, recordStart, messages);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    closeQuietly(inputStream);
+                }
+            }
+
+            // Not committed yet
+            synchronized (mPendingRecords) {
+                List<byte[]> records = mPendingRecords.get(roomName);
+                if (records != null) {
+                    for (byte[] record : records) {
+                        decode(ByteBuffer.wrap(record), 0, messages);
+                    }
+                }
+            }
+        }
+        messages = newestSorted(messages, maxCount);
+
+        Log.d(Constants.LOG_TAG, "Read " + messages.size() + " journaled messages of room " + roomName
+                + " in " + (SystemClock.elapsedRealtime() - startTime) + " ms.");
+        return messages;
+    }
+
+    /**
+     * Gets the newest messages in ascending timestamp order.
+     * Messages are journaled in arrival order, which may differ slightly from timestamp order.
+     */
+    private static MessageStore newestSorted(MessageStore messages, int maxCount) {
+        int size = messages.size();
+        boolean isSorted = true;
+        for (int i = 1; i < size && isSorted; i++) {
+            isSorted = messages.getTimestamp(i - 1) <= messages.getTimestamp(i);
+        }
+        if (isSorted && size <= maxCount) return messages;
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(messages.getTimestamp(a), messages.getTimestamp(b)));
+
+        int count = Math.min(size, maxCount);
+        MessageStore newest = new MessageStore(count);
+        for (int i = size - count; i < size; i++) {
+            newest.add(messages.getSenderId(order[i]), messages.getData(order[i]), messages.getTimestamp(order[i]));
+        }
+        return newest;
+    }
+
+    /**
+     * Writes all pending records to their journals and forces them to disk, one write per room.
+     * Records stay pending until they are written, so they are kept (and retried) if writing fails.
+     * Runs in mWriter.
+     */
+    private void commit() {
+        Map<String, List<byte[]>> pendingRecords = new HashMap<>();
+        synchronized (mPendingRecords) {
+            for (Map.Entry<String, List<byte[]>> entry : mPendingRecords.entrySet()) {
+                pendingRecords.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+
+        boolean isFailed = false;
+        for (Map.Entry<String, List<byte[]>> entry : pendingRecords.entrySet()) {
+            String roomName = entry.getKey();
+            List<byte[]> records = entry.getValue();
+
+            int size = 0;
+            for (byte[] record : records) size += record.length;
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] record : records) buffer.put(record);
+            buffer.flip();
+
+            FileChannel channel;
+            try {
+                channel = getChannel(roomName);
+                synchronized (mFileLock) {
+                    long committedSize = channel.size();
+                    try {
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                    } catch (IOException e) {
+                        channel.truncate(committedSize); // Drop the partial write, the records are written again
+                        throw e;
+                    }
+                    removePendingRecords(roomName, records.size());
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeChannel(roomName);
+                isFailed = true;
+                continue;
+            }
+
+            try {
+                if (channel.size() > COMPACT_THRESHOLD_BYTES) compact(roomName);
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeChannel(roomName);
+            }
+        }
+
+        // Appends only schedule a commit when nothing is pending, so commit what was appended meanwhile or failed
+        synchronized (mPendingRecords) {
+            if (mPendingRecords.isEmpty()) return;
+        }
+        mMainHandler.postDelayed(mCommit, isFailed ? COMMIT_RETRY_DELAY_MS : COMMIT_DELAY_MS);
+    }
+
+    /**
+     * Drops the oldest pending records of the room, once written to its journal.
+     */
+    private void removePendingRecords(String roomName, int count) {
+        synchronized (mPendingRecords) {
+            List<byte[]> records = mPendingRecords.get(roomName);
+            records.subList(0, count).clear();
+            if (records.isEmpty()) mPendingRecords.remove(roomName);
+        }
+    }
+
+    /**
+     * Opens the room's journal for appending, dropping a partially written last record (e.g. after a crash).
+     */
+    private FileChannel getChannel(String roomName) throws IOException {
+        FileChannel channel = mChannels.get(roomName);
+        if (channel != null) return channel;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) throw new IOException("Failed to create " + mDirectory);
+        channel = new FileOutputStream(getFile(roomName), true).getChannel();
+        if (channel.size() > 0) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int validEnd = findValidEnd(buffer);
+            if (validEnd < channel.size()) {
+                Log.w(TAG, "Dropping " + (channel.size() - validEnd) + " bytes of a partially written record of room " + roomName);
+                channel.truncate(validEnd);
+            }
+        }
+        mChannels.put(roomName, channel);
+        return channel;
+    }
+
+    /**
+     * Rewrites the room's journal with its newest {@link #COMPACT_KEEP_COUNT} records only.
+     */
+    private void compact(String roomName) throws IOException {
+        FileChannel channel = mChannels.get(roomName);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int[] recordStarts = findLastRecords(buffer, COMPACT_KEEP_COUNT);
+        if (recordStarts.length == 0) return;
+
+        File file = getFile(roomName);
+        File compactedFile = new File(mDirectory, file.getName() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(compactedFile);
+        try {
+            FileChannel compactedChannel = outputStream.getChannel();
+            ByteBuffer tail = buffer.duplicate();
+            tail.position(recordStarts[0]);
+            while (tail.hasRemaining()) compactedChannel.write(tail);
+            compactedChannel.force(false);
+        } finally {
+            closeQuietly(outputStream);
+        }
+
+        // Replaced while no reader has the journal open
+        synchronized (mFileLock) {
+            closeChannel(roomName);
+            if (!compactedFile.renameTo(file)) throw new IOException("Failed to replace " + file);
+        }
+        Log.d(TAG, "Compacted journal of room " + roomName + " to " + recordStarts.length + " messages");
+    }
+
+    private void closeChannel(String roomName) {
+        FileChannel channel = mChannels.remove(roomName);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private File getFile(String roomName) {
+        try {
+            return new File(mDirectory, URLEncoder.encode(roomName, "UTF-8") + FILE_EXTENSION);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is not supported");
+        }
+    }
+
+    /**
+     * Encodes a record. The record codec is package-private, so that it can be tested without files.
+     */
+    static byte[] encode(String senderId, String data, long timestamp) {
+        byte[] senderIdBytes = senderId == null ? new byte[0] : senderId.getBytes(UTF_8);
+        byte[] dataBytes = data == null ? new byte[0] : data.getBytes(UTF_8);
+        int length = RECORD_OVERHEAD + senderIdBytes.length + dataBytes.length;
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.putLong(timestamp);
+        record.putInt(senderIdBytes.length);
+        record.put(senderIdBytes);
+        record.putInt(dataBytes.length);
+        record.put(dataBytes);
+        record.putInt(length);
+        return record.array();
+    }
+
+    static void decode(ByteBuffer buffer, int recordStart, MessageStore messages) {
+        int position = recordStart + 4;
+        long timestamp = buffer.getLong(position);
+        position += 8;
+        int senderIdLength = buffer.getInt(position);
+        position += 4;
+        String senderId = readString(buffer, position, senderIdLength);
+        position += senderIdLength;
+        int dataLength = buffer.getInt(position);
+        position += 4;
+        String data = readString(buffer, position, dataLength);
+        messages.add(senderId, data, timestamp);
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Finds the newest records by walking backwards from the end of the journal.
+     * @return Start positions of up to maxCount records, in file order
+     */
+    static int[] findLastRecords(ByteBuffer buffer, int maxCount) {
+        int end = buffer.limit();
+        if (!isValidTail(buffer, end)) end = findValidEnd(buffer); // Partially written last record
+
+        int[] starts = new int[maxCount];
+        int count = 0;
+        while (count < maxCount && end > 0) {
+            int length = buffer.getInt(end - 4);
+            int start = end - length;
+            if (length < RECORD_OVERHEAD || start < 0 || buffer.getInt(start) != length) break;
+            starts[maxCount - 1 - count++] = start;
+            end = start;
+        }
+
+        int[] result = new int[count];
+        System.arraycopy(starts, maxCount - count, result, 0, count);
+        return result;
+    }
+
+    private static boolean isValidTail(ByteBuffer buffer, int end) {
+        if (end < RECORD_OVERHEAD) return end == 0;
+        int length = buffer.getInt(end - 4);
+        int start = end - length;
+        return length >= RECORD_OVERHEAD && start >= 0 && buffer.getInt(start) == length;
+    }
+
+    /**
+     * Walks the journal forwards to find the end of the last completely written record.
+     */
+    static int findValidEnd(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int position = 0;
+        while (limit - position >= RECORD_OVERHEAD) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD || length > limit - position || buffer.getInt(position + length - 4) != length) break;
+            position += length;
+        }
+        return position;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerChange;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerSnapshot;
+
+/**
+ * Tracks the remote peers of the room and delivers their joins and leaves in the main thread,
+ * at most once per display frame (see {@link FrameCoalescer}), so that a burst of joins updates the UI once.
+ * Each delivery carries the changes since the previous delivery together with an immutable {@link PeerSnapshot}
+ * that shares its unchanged chunks with the previous snapshot.
+ * Peers can be added and removed from any thread.
+ */
+public class PeerChangeBatcher {
+    private final PeerSnapshot.Builder mBuilder; // Guarded by itself
+    private List<PeerChange> mPendingChanges; // Changes since the last delivery, guarded by mBuilder
+    private PeerSnapshot mPeers; // Last delivered snapshot, accessed in the main thread only
+    private final FrameCoalescer mFlush;
+    private final Callback mCallback;
+    private volatile boolean mIsStopped;
+
+    // Statistics
+    private final AtomicLong mChangeCount;
+    private final AtomicLong mBatchCount;
+
+    public interface Callback {
+        /**
+         * Called in the main thread with the peer changes since the previous call.
+         * @param previousPeers Peers the changes apply to, as delivered by the previous call
+         * @param peers Peers after the changes
+         * @param changes Joins and leaves, in order
+         */
+        void onPeersChanged(PeerSnapshot previousPeers, PeerSnapshot peers, List<PeerChange> changes);
+    }
+
+    public PeerChangeBatcher(Callback callback) {
+        mBuilder = new PeerSnapshot.Builder();
+        mPendingChanges = new ArrayList<>();
+        mPeers = PeerSnapshot.EMPTY;
+        mFlush = new FrameCoalescer(this::flush);
+        mCallback = callback;
+        mChangeCount = new AtomicLong();
+        mBatchCount = new AtomicLong();
+    }
+
+    /**
+     * Adds a peer who joined the room. Does nothing if the peer is tracked already.
+     */
+    public void add(String peerId) {
+        synchronized (mBuilder) {
+            int position = mBuilder.add(peerId);
+            if (position < 0) return;
+            mPendingChanges.add(new PeerChange(PeerChange.Type.ADDED, peerId, position));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Removes a peer who left the room. Does nothing if the peer is not tracked.
+     */
+    public void remove(String peerId) {
+        synchronized (mBuilder) {
+            int position = mBuilder.remove(peerId);
+            if (position < 0) return;
+            mPendingChanges.add(new PeerChange(PeerChange.Type.REMOVED, peerId, position));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Stops delivering changes.
+     */
+    public void stop() {
+        mIsStopped = true;
+    }
+
+    private void scheduleFlush() {
+        if (!mIsStopped) mFlush.request();
+    }
+
+    private void flush() {
+        if (mIsStopped) return;
+
+        PeerSnapshot peers;
+        List<PeerChange> changes;
+        synchronized (mBuilder) {
+            if (mPendingChanges.isEmpty()) return;
+            peers = mBuilder.build();
+            changes = mPendingChanges;
+            mPendingChanges = new ArrayList<>();
+        }
+
+        mChangeCount.addAndGet(changes.size());
+        mBatchCount.incrementAndGet();
+        if (changes.size() > 1) {
+            Log.d(Constants.LOG_TAG, "Merged " + changes.size() + " peer changes into one update ("
+                    + mChangeCount.get() + " changes in " + mBatchCount.get() + " updates).");
+        }
+
+        PeerSnapshot previousPeers = mPeers;
+        mPeers = peers;
+        mCallback.onPeersChanged(previousPeers, peers, Collections.unmodifiableList(changes));
+    }
+}
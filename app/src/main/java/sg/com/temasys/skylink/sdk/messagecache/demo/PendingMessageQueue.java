@@ -0,0 +1,245 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Small on-disk queue of sent messages that have not been handed to the Skylink SDK yet, or that failed.
+ * Messages stay queued until they are sent, so that they can be retried on reconnection and survive process death.
+ * The queue is saved as a whole to a JSON file in the I/O lane of {@link TaskExecutors} after each change, replacing the previous file
+ * atomically. It is only meant to hold a handful of messages at a time.
+ * Thread safe. The first {@link #getInstance(Context)} reads the file, so it should not be called in the main thread.
+ */
+public class PendingMessageQueue {
+    private static final String TAG = PendingMessageQueue.class.getSimpleName();
+
+    private static final String FILE_NAME = "pending_messages.json";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String KEY_ROOM_NAME = "room";
+    private static final String KEY_SENDER_ID = "sender";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_TIMESTAMP = "timestamp";
+
+    private static PendingMessageQueue INSTANCE;
+
+    private final File mFile;
+    private final TaskExecutors.SerialExecutor mWriter;
+    private final AtomicBoolean mIsSaveScheduled;
+    private final List<Entry> mEntries; // In send order
+
+    public enum SendState {
+        PENDING,
+        SENT,
+        FAILED,
+    }
+
+    /**
+     * A queued message.
+     */
+    public static class Entry {
+        public final String roomName;
+        public final String senderId;
+        public final String data;
+        public final long timestamp;
+        private boolean mIsFailed;
+        private boolean mIsInFlight; // Handed to the outbox and not reported yet, not persisted
+
+        private Entry(String roomName, String senderId, String data, long timestamp, boolean isFailed) {
+            this.roomName = roomName;
+            this.senderId = senderId;
+            this.data = data;
+            this.timestamp = timestamp;
+            mIsFailed = isFailed;
+        }
+    }
+
+    /**
+     * Gets the process-wide queue, reading messages left queued by a previous process.
+     */
+    public static synchronized PendingMessageQueue getInstance(Context context) {
+        if (INSTANCE == null) INSTANCE = new PendingMessageQueue(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        return INSTANCE;
+    }
+
+    private PendingMessageQueue(File file) {
+        mFile = file;
+        mWriter = TaskExecutors.getInstance().newSerialExecutor(TaskExecutors.Lane.IO, TaskExecutors.Priority.NORMAL);
+        mIsSaveScheduled = new AtomicBoolean();
+        mEntries = read(file);
+        if (!mEntries.isEmpty()) Log.d(Constants.LOG_TAG, "Restored " + mEntries.size() + " unsent messages.");
+    }
+
+    /**
+     * Queues a message that is about to be sent.
+     * @return Queued entry, to be reported with {@link #onSent(Entry)} or {@link #onFailed(Entry)}
+     */
+    public Entry add(String roomName, String senderId, String data, long timestamp) {
+        Entry entry = new Entry(roomName, senderId, data, timestamp, false);
+        synchronized (mEntries) {
+            mEntries.add(entry);
+        }
+        save();
+        return entry;
+    }
+
+    /**
+     * Takes the room's queued messages that are not being sent already, to (re)send them.
+     * @param failedOnly True to take failed messages only, e.g. when retrying while connected
+     * @return Messages in send order, marked as being sent
+     */
+    public List<Entry> takeForSending(String roomName, boolean failedOnly) {
+        List<Entry> entries = new ArrayList<>();
+        synchronized (mEntries) {
+            for (Entry entry : mEntries) {
+                if (entry.mIsInFlight || !entry.roomName.equals(roomName) || (failedOnly && !entry.mIsFailed)) continue;
+                entry.mIsInFlight = true;
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Marks a message as being sent.
+     * @return False if the message is being sent already
+     */
+    public boolean markInFlight(Entry entry) {
+        synchronized (mEntries) {
+            if (entry.mIsInFlight) return false;
+            entry.mIsInFlight = true;
+            return true;
+        }
+    }
+
+    /**
+     * Removes a message that has been sent.
+     */
+    public void onSent(Entry entry) {
+        boolean isRemoved;
+        synchronized (mEntries) {
+            entry.mIsInFlight = false;
+            isRemoved = mEntries.remove(entry);
+        }
+        if (isRemoved) save();
+    }
+
+    /**
+     * Keeps a message that failed to be sent for a later retry,
+     * re-queuing it in send order if it was reported sent before failing.
+     */
+    public void onFailed(Entry entry) {
+        synchronized (mEntries) {
+            entry.mIsInFlight = false;
+            entry.mIsFailed = true;
+            if (!mEntries.contains(entry)) {
+                int index = 0;
+                while (index < mEntries.size() && mEntries.get(index).timestamp <= entry.timestamp) index++;
+                mEntries.add(index, entry);
+            }
+        }
+        save();
+    }
+
+    /**
+     * Saves the queue in the writer thread. Saves queued while another save is pending are coalesced,
+     * as each save writes the whole queue.
+     */
+    private void save() {
+        if (!mIsSaveScheduled.compareAndSet(false, true)) return;
+
+        mWriter.execute(() -> {
+            mIsSaveScheduled.set(false);
+            String json;
+            synchronized (mEntries) {
+                json = toJson(mEntries).toString();
+            }
+
+            File tempFile = new File(mFile.getPath() + ".tmp");
+            FileOutputStream outputStream = null;
+            try {
+                outputStream = new FileOutputStream(tempFile);
+                outputStream.write(json.getBytes(UTF_8));
+                outputStream.getFD().sync();
+                outputStream.close();
+                outputStream = null;
+                if (!tempFile.renameTo(mFile)) Log.e(TAG, "Failed to replace " + mFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                if (outputStream != null) {
+                    try {
+                        outputStream.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        });
+    }
+
+    private static JSONArray toJson(List<Entry> entries) {
+        JSONArray json = new JSONArray();
+        try {
+            for (Entry entry : entries) {
+                JSONObject entryJson = new JSONObject();
+                entryJson.put(KEY_ROOM_NAME, entry.roomName);
+                entryJson.put(KEY_SENDER_ID, entry.senderId);
+                entryJson.put(KEY_DATA, entry.data);
+                entryJson.put(KEY_TIMESTAMP, entry.timestamp);
+                json.put(entryJson);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            throw new AssertionError("Failed to write to pending message JSONObject");
+        }
+        return json;
+    }
+
+    private static List<Entry> read(File file) {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) return entries;
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int count;
+            while (offset < bytes.length && (count = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += count;
+            }
+
+            JSONArray json = new JSONArray(new String(bytes, 0, offset, UTF_8));
+            for (int i = 0; i < json.length(); i++) {
+                JSONObject entryJson = json.getJSONObject(i);
+                // Messages being sent when the process died are not known to be sent, treat them as failed
+                entries.add(new Entry(entryJson.getString(KEY_ROOM_NAME), entryJson.getString(KEY_SENDER_ID),
+                        entryJson.getString(KEY_DATA), entryJson.getLong(KEY_TIMESTAMP), true));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to read pending messages, dropping them: " + e);
+            entries.clear();
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return entries;
+    }
+}
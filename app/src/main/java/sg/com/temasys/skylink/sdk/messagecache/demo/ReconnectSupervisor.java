@@ -0,0 +1,150 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Reconnects to a Skylink Room after an unexpected disconnection, with jittered exponential backoff.
+ * While the network is down, attempts are paused and resumed as soon as it comes back.
+ * At most one attempt is in flight at a time.
+ * Collects reconnect-time metrics, logged on each reconnection.
+ * Must be used in the main thread.
+ */
+public class ReconnectSupervisor {
+    private static final String TAG = ReconnectSupervisor.class.getSimpleName();
+
+    private static final long INITIAL_DELAY_MS = 500;
+    private static final long MAX_DELAY_MS = 30000;
+
+    private final Handler mMainHandler;
+    private final Random mRandom;
+    private final Reconnector mReconnector;
+    private final NetworkState mNetworkState;
+    private final Runnable mAttempt;
+
+    private String mRoomName; // Room being reconnected, null if not reconnecting
+    private int mAttemptCount;
+    private int mPendingAttemptId; // Attempt in flight, 0 if none
+    private int mLastAttemptId;
+    private long mDisconnectTime;
+
+    // Metrics
+    private int mReconnectCount;
+    private int mFailedAttemptCount;
+    private long mLastReconnectTimeMs;
+    private long mTotalReconnectTimeMs;
+
+    public interface Reconnector {
+        /**
+         * Attempts to connect to the room. The result is reported with
+         * {@link #onReconnectSucceeded(int)} or {@link #onReconnectFailed(int)}.
+         * @param attemptId ID of the attempt, to be passed back with its result
+         */
+        void reconnect(String roomName, int attemptId);
+    }
+
+    public interface NetworkState {
+        boolean isNetworkAvailable();
+    }
+
+    public ReconnectSupervisor(Reconnector reconnector, NetworkState networkState) {
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mRandom = new Random();
+        mReconnector = reconnector;
+        mNetworkState = networkState;
+        mAttempt = this::attempt;
+    }
+
+    /**
+     * Starts reconnecting to the room that has been unexpectedly disconnected.
+     */
+    public void onUnexpectedDisconnect(String roomName) {
+        if (roomName == null) return;
+
+        mRoomName = roomName;
+        mAttemptCount = 0;
+        mPendingAttemptId = 0;
+        mDisconnectTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Unexpectedly disconnected from room " + roomName + ", reconnecting");
+        scheduleAttempt();
+    }
+
+    /**
+     * Retries right away when the network comes back, instead of waiting for the backoff.
+     * If an attempt is in flight, it is left to complete, and a failure retries without backoff.
+     */
+    public void onNetworkAvailable() {
+        if (!isReconnecting()) return;
+
+        mAttemptCount = 0;
+        if (mPendingAttemptId != 0) return;
+
+        mMainHandler.removeCallbacks(mAttempt);
+        attempt();
+    }
+
+    public void onReconnectSucceeded(int attemptId) {
+        if (!isReconnecting() || attemptId != mPendingAttemptId) return;
+        mPendingAttemptId = 0;
+
+        mLastReconnectTimeMs = SystemClock.elapsedRealtime() - mDisconnectTime;
+        mTotalReconnectTimeMs += mLastReconnectTimeMs;
+        mReconnectCount++;
+        Log.d(TAG, "Reconnected to room " + mRoomName + " in " + mLastReconnectTimeMs + " ms after "
+                + mAttemptCount + " attempt(s). " + getStats());
+        mRoomName = null;
+    }
+
+    public void onReconnectFailed(int attemptId) {
+        if (!isReconnecting() || attemptId != mPendingAttemptId) return;
+        mPendingAttemptId = 0;
+
+        mFailedAttemptCount++;
+        scheduleAttempt();
+    }
+
+    /**
+     * Stops reconnecting, e.g. when the user selects another room or exits.
+     */
+    public void stop() {
+        mMainHandler.removeCallbacks(mAttempt);
+        if (isReconnecting()) Log.d(TAG, "Stopped reconnecting to room " + mRoomName + ". " + getStats());
+        mRoomName = null;
+        mPendingAttemptId = 0;
+    }
+
+    public boolean isReconnecting() {
+        return mRoomName != null;
+    }
+
+    public String getStats() {
+        long averageReconnectTimeMs = mReconnectCount == 0 ? 0 : mTotalReconnectTimeMs / mReconnectCount;
+        return "reconnects: " + mReconnectCount + ", failed attempts: " + mFailedAttemptCount
+                + ", last: " + mLastReconnectTimeMs + " ms, average: " + averageReconnectTimeMs + " ms";
+    }
+
+    private void scheduleAttempt() {
+        // Exponential backoff with jitter, so that peers dropped together do not reconnect together
+        long maxDelay = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(mAttemptCount, 16));
+        long delay = maxDelay / 2 + (long) (mRandom.nextDouble() * maxDelay / 2);
+        mMainHandler.postDelayed(mAttempt, delay);
+    }
+
+    private void attempt() {
+        if (!isReconnecting()) return;
+
+        // Offline? Then wait for onNetworkAvailable instead of spending attempts
+        if (!mNetworkState.isNetworkAvailable()) {
+            Log.d(TAG, "Network unavailable, waiting for it to reconnect to room " + mRoomName);
+            return;
+        }
+
+        mAttemptCount++;
+        mPendingAttemptId = ++mLastAttemptId;
+        mReconnector.reconnect(mRoomName, mPendingAttemptId);
+    }
+}
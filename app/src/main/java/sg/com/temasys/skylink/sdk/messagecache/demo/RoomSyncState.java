@@ -0,0 +1,122 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of how far the message history of each Skylink Room has been synced, so that stored messages
+ * already held locally are not decoded and displayed again.
+ * The high-water mark of a room is the newest message timestamp known to be synced without gaps.
+ * It advances with stored message history and with live messages received after that history,
+ * and is persisted across app launches when a sync completes or the connection changes.
+ * Thread safe.
+ */
+public class RoomSyncState {
+    private static final String PREFERENCES_NAME = "room_sync_state";
+
+    private final SharedPreferences mPreferences;
+    private final Map<String, Long> mHighWaterMarks; // Room name -> newest synced timestamp
+    private final Set<String> mUnsavedRoomNames; // Rooms whose high-water mark has not been persisted yet
+    private final Map<String, long[]> mCachedRanges; // Room name -> {oldest, newest} timestamp in the local cache
+    private String mSyncedRoomName; // Room whose live messages currently extend its high-water mark
+
+    public RoomSyncState(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mHighWaterMarks = new HashMap<>();
+        mUnsavedRoomNames = new HashSet<>();
+        mCachedRanges = new HashMap<>();
+    }
+
+    /**
+     * Gets the newest synced message timestamp of the room.
+     * @return High-water mark, or Long.MIN_VALUE if the room has never been synced
+     */
+    public synchronized long getHighWaterMark(String roomName) {
+        Long highWaterMark = mHighWaterMarks.get(roomName);
+        if (highWaterMark == null) {
+            highWaterMark = mPreferences.getLong(roomName, Long.MIN_VALUE);
+            mHighWaterMarks.put(roomName, highWaterMark);
+        }
+        return highWaterMark;
+    }
+
+    /**
+     * Records the timestamp range of the room's messages read from the local cache.
+     */
+    public synchronized void onCachedMessagesRead(String roomName, long oldestTimestamp, long newestTimestamp) {
+        mCachedRanges.put(roomName, new long[]{oldestTimestamp, newestTimestamp});
+    }
+
+    /**
+     * Gets the range of timestamps whose messages are both synced and held in the local cache.
+     * Stored messages from the server within this range do not need to be decoded again.
+     * @return {from, to} inclusive range, or null if there is no such range
+     */
+    public synchronized long[] getLocallyHeldRange(String roomName) {
+        long[] cachedRange = mCachedRanges.get(roomName);
+        if (cachedRange == null) return null;
+
+        long to = Math.min(cachedRange[1], getHighWaterMark(roomName));
+        return to < cachedRange[0] ? null : new long[]{cachedRange[0], to};
+    }
+
+    /**
+     * Records that the stored message history of the room has been received, up to the given timestamp.
+     * Live messages of the room extend the high-water mark from now on.
+     */
+    public synchronized void onStoredMessagesSynced(String roomName, long newestTimestamp) {
+        mSyncedRoomName = roomName;
+        advance(roomName, newestTimestamp);
+        save();
+    }
+
+    /**
+     * Records a live message of the room. Only extends the high-water mark if the room has been synced
+     * in the current connection, otherwise there may be a gap before the message.
+     */
+    public synchronized void onLiveMessageReceived(String roomName, long timestamp) {
+        if (roomName != null && roomName.equals(mSyncedRoomName)) {
+            advance(roomName, timestamp);
+        }
+    }
+
+    /**
+     * Checks whether the room's stored history has been synced in the current connection,
+     * i.e. all its messages up to the high-water mark have been received.
+     */
+    public synchronized boolean isSynced(String roomName) {
+        return roomName != null && roomName.equals(mSyncedRoomName);
+    }
+
+    /**
+     * Records that the connection to the room has changed (connected or disconnected),
+     * after which live messages no longer extend the high-water mark until the next sync.
+     */
+    public synchronized void onConnectionChanged() {
+        mSyncedRoomName = null;
+        save();
+    }
+
+    private void advance(String roomName, long timestamp) {
+        if (timestamp <= getHighWaterMark(roomName)) return;
+
+        mHighWaterMarks.put(roomName, timestamp);
+        mUnsavedRoomNames.add(roomName);
+    }
+
+    private void save() {
+        if (mUnsavedRoomNames.isEmpty()) return;
+
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (String roomName : mUnsavedRoomNames) {
+            editor.putLong(roomName, mHighWaterMarks.get(roomName));
+        }
+        editor.apply();
+        mUnsavedRoomNames.clear();
+    }
+}
@@ -0,0 +1,165 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+/**
+ * Process-wide in-memory cache of decoded room timelines, in front of the Skylink message cache.
+ * Bounded by the estimated size of the timelines in bytes, least recently used rooms are evicted first.
+ * A cached timeline is the same store that is displayed, so live and sent messages update it in place;
+ * callers report such changes with {@link #onTimelineChanged(String)} so that its size is re-estimated.
+ * Messages of a room that cannot be merged into its cached timeline invalidate it, see {@link #invalidate(String)}.
+ * Thread safe, but cached timelines must only be modified (and reported) in the main thread.
+ */
+public class RoomTimelineCache {
+    private static final String TAG = RoomTimelineCache.class.getSimpleName();
+
+    private static RoomTimelineCache INSTANCE;
+
+    private final Map<String, Entry> mEntries; // In access order, least recently used first
+    private final long mMaxBytes;
+    private long mBytes;
+
+    // Statistics
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    private static class Entry {
+        private final MessageStore timeline;
+        private long bytes;
+
+        private Entry(MessageStore timeline) {
+            this.timeline = timeline;
+            this.bytes = timeline.getEstimatedBytes();
+        }
+    }
+
+    /**
+     * Gets the process-wide instance, bounded to 1/16 of the maximum heap.
+     */
+    public static synchronized RoomTimelineCache getInstance() {
+        if (INSTANCE == null) INSTANCE = new RoomTimelineCache(Runtime.getRuntime().maxMemory() / 16);
+        return INSTANCE;
+    }
+
+    public RoomTimelineCache(long maxBytes) {
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cached timeline of the room and marks it as most recently used.
+     * @return Cached timeline, or null if not cached
+     */
+    public synchronized MessageStore get(String roomName) {
+        Entry entry = mEntries.get(roomName);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.timeline;
+    }
+
+    /**
+     * Checks whether the room's timeline is cached, without counting a hit or miss or changing the access order.
+     */
+    public synchronized boolean contains(String roomName) {
+        return mEntries.containsKey(roomName);
+    }
+
+    /**
+     * Caches the timeline of the room, replacing any previously cached timeline.
+     */
+    public synchronized void put(String roomName, MessageStore timeline) {
+        Entry previous = mEntries.put(roomName, new Entry(timeline));
+        if (previous != null) mBytes -= previous.bytes;
+        mBytes += mEntries.get(roomName).bytes;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Caches the timeline of the room unless a timeline of the room is already cached.
+     * @return True if the timeline was cached
+     */
+    public synchronized boolean putIfAbsent(String roomName, MessageStore timeline) {
+        if (mEntries.containsKey(roomName)) return false;
+        put(roomName, timeline);
+        return true;
+    }
+
+    /**
+     * Re-estimates the size of the room's timeline after it has been modified in place.
+     */
+    public synchronized void onTimelineChanged(String roomName) {
+        Entry entry = mEntries.get(roomName);
+        if (entry == null) return;
+
+        long bytes = entry.timeline.getEstimatedBytes();
+        mBytes += bytes - entry.bytes;
+        entry.bytes = bytes;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Drops the cached timeline of the room, when messages of the room have been cached or journaled
+     * without being merged into its cached timeline.
+     */
+    public synchronized void invalidate(String roomName) {
+        Entry entry = mEntries.remove(roomName);
+        if (entry != null) mBytes -= entry.bytes;
+    }
+
+    /**
+     * Shrinks the cache according to the memory pressure reported by {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // App is in the background and likely to be killed soon
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(mMaxBytes / 4);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxBytes / 2);
+        }
+        Log.d(TAG, "onTrimMemory(" + level + ") " + getStats());
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public synchronized long getSizeBytes() {
+        return mBytes;
+    }
+
+    public synchronized String getStats() {
+        return "rooms: " + mEntries.size() + ", bytes: " + mBytes + "/" + mMaxBytes
+                + ", hits: " + mHitCount + ", misses: " + mMissCount + ", evictions: " + mEvictionCount;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            mBytes -= eldest.bytes;
+            mEvictionCount++;
+        }
+    }
+}
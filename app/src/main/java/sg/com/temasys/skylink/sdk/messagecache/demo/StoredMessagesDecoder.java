@@ -0,0 +1,94 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import org.json.JSONArray;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+/**
+ * Decodes stored message history from the server into message stores in the CPU lane of {@link TaskExecutors},
+ * one chunk at a time.
+ * The newest chunk is delivered first, so the latest history can be displayed before older history is decoded.
+ * Only one chunk is decoded at a time and the JSON array is released as soon as decoding ends.
+ * Starting a new decode cancels the previous one.
+ */
+public class StoredMessagesDecoder {
+    public static final int CHUNK_SIZE = 100;
+
+    private final TaskExecutors.SerialExecutor mExecutor;
+    private final AtomicInteger mGeneration; // Incremented on every decode/cancel, stale decodes stop when it changes
+
+    public interface Callback {
+        /**
+         * Called in a worker thread for each decoded chunk holding at least one message.
+         * @param chunk Stored messages, in ascending timestamp order
+         */
+        void onStoredMessagesChunkDecoded(MessageStore chunk);
+
+        /**
+         * Called in a worker thread after all chunks have been delivered.
+         * Not called if the decode was cancelled.
+         * @param decodedCount Number of decoded messages
+         * @param newestTimestamp Timestamp of the newest decoded message, or Long.MIN_VALUE if none was decoded
+         */
+        void onStoredMessagesDecoded(int decodedCount, long newestTimestamp);
+    }
+
+    public StoredMessagesDecoder() {
+        mExecutor = TaskExecutors.getInstance().newSerialExecutor(TaskExecutors.Lane.CPU, TaskExecutors.Priority.NORMAL);
+        mGeneration = new AtomicInteger();
+    }
+
+    /**
+     * Starts decoding stored messages, cancelling any previous decode.
+     * Messages within the skipped timestamp range (e.g. held locally) are not decoded beyond their timestamp.
+     * @param storedMessages JSON array of stored messages from the SDK, in ascending timestamp order
+     * @param skipFrom Start of the timestamp range to skip (inclusive)
+     * @param skipTo End of the timestamp range to skip (inclusive)
+     * @param callback Receives decoded chunks, newest chunk first
+     */
+    public void decode(JSONArray storedMessages, long skipFrom, long skipTo, Callback callback) {
+        final int generation = mGeneration.incrementAndGet();
+        if (mExecutor.isShutdown()) return;
+        mExecutor.execute(() -> {
+            int decodedCount = 0;
+            long newestTimestamp = Long.MIN_VALUE;
+
+            // Walk from the newest message backwards, one chunk at a time
+            int end = storedMessages.length();
+            while (end > 0) {
+                if (isCancelled(generation)) return;
+
+                int start = Math.max(0, end - CHUNK_SIZE);
+                MessageStore chunk = MessageStore.fromJson(storedMessages, start, end, skipFrom, skipTo);
+                end = start;
+                if (chunk.size() == 0) continue;
+
+                if (decodedCount == 0) newestTimestamp = chunk.getTimestamp(chunk.size() - 1);
+                decodedCount += chunk.size();
+                callback.onStoredMessagesChunkDecoded(chunk);
+            }
+            if (!isCancelled(generation)) callback.onStoredMessagesDecoded(decodedCount, newestTimestamp);
+        });
+    }
+
+    /**
+     * Cancels the ongoing decode, if any.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Cancels the ongoing decode and drops the queued ones.
+     */
+    public void shutdown() {
+        cancel();
+        mExecutor.shutdown();
+    }
+
+    private boolean isCancelled(int generation) {
+        return generation != mGeneration.get();
+    }
+}
@@ -0,0 +1,332 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide worker threads, split into lanes so that different kinds of work do not queue behind each other:
+ * {@link Lane#NETWORK} for blocking Skylink connection work, {@link Lane#IO} for cache and file I/O
+ * and {@link Lane#CPU} for decoding, which has (cores - 1) threads but at least 2.
+ * Within a lane, tasks run by {@link Priority}, then in submission order; a task runs at the thread priority
+ * of its {@link Priority}.
+ * Tasks are submitted through a {@link Scope} owned by a fragment or presenter, which cancels its pending tasks
+ * when it is closed, or through a {@link SerialExecutor} that runs its tasks one at a time, in order.
+ * Lanes are never shut down, their idle threads time out instead.
+ * Each lane measures how long its tasks wait before running.
+ */
+public class TaskExecutors {
+    private static final String TAG = TaskExecutors.class.getSimpleName();
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static TaskExecutors INSTANCE;
+
+    private final LaneExecutor[] mLanes;
+
+    public enum Lane {
+        NETWORK(1), // Skylink connection changes are serialized
+        IO(2),
+        CPU(Math.max(2, Runtime.getRuntime().availableProcessors() - 1)); // Leaves a core to the main thread, except on dual-core devices
+
+        private final int threadCount;
+
+        Lane(int threadCount) {
+            this.threadCount = threadCount;
+        }
+    }
+
+    public enum Priority {
+        HIGH(Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_MORE_FAVORABLE), // Work the user is waiting for
+        NORMAL(Process.THREAD_PRIORITY_DEFAULT),
+        LOW(Process.THREAD_PRIORITY_BACKGROUND); // Speculative work, e.g. prefetching
+
+        private final int threadPriority;
+
+        Priority(int threadPriority) {
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    /**
+     * Submitted task, which can be cancelled until it starts running.
+     */
+    public static class Task implements Runnable, Comparable<Task> {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final Runnable mRunnable;
+        private final Priority mPriority;
+        private final long mSequence;
+        private Scope mScope;
+        private LaneExecutor mLane;
+        private long mSubmitTimeNs;
+        private volatile boolean mIsCancelled;
+
+        private Task(Runnable runnable, Priority priority) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = SEQUENCE.getAndIncrement();
+        }
+
+        /**
+         * Cancels the task. Does nothing if it is already running.
+         */
+        public void cancel() {
+            mIsCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mIsCancelled;
+        }
+
+        @Override
+        public void run() {
+            mLane.onTaskStarted(this);
+            try {
+                if (mIsCancelled) return;
+                Process.setThreadPriority(mPriority.threadPriority);
+                mRunnable.run();
+            } finally {
+                if (mScope != null) mScope.onTaskDone(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int result = mPriority.compareTo(other.mPriority);
+            return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    /**
+     * Tasks owned by a fragment or presenter, cancelled together when the owner is destroyed.
+     */
+    public class Scope {
+        private final String mName;
+        private final Set<Task> mTasks;
+        private boolean mIsClosed;
+
+        private Scope(String name) {
+            mName = name;
+            mTasks = new HashSet<>();
+        }
+
+        /**
+         * Submits a task to a lane. Once the scope is closed, tasks are cancelled right away.
+         * @return Submitted task
+         */
+        public Task execute(Lane lane, Priority priority, Runnable runnable) {
+            Task task = new Task(runnable, priority);
+            synchronized (mTasks) {
+                if (mIsClosed) {
+                    task.cancel();
+                    return task;
+                }
+                task.mScope = this;
+                mTasks.add(task);
+            }
+            submit(lane, task);
+            return task;
+        }
+
+        /**
+         * Cancels the pending tasks and any task submitted afterwards. Running tasks are left to complete.
+         */
+        public void close() {
+            int cancelledCount;
+            synchronized (mTasks) {
+                mIsClosed = true;
+                cancelledCount = mTasks.size();
+                for (Task task : mTasks) {
+                    task.cancel();
+                }
+                mTasks.clear();
+            }
+            Log.d(TAG, "Closed scope " + mName + ", cancelled " + cancelledCount + " task(s). " + getStats());
+        }
+
+        private void onTaskDone(Task task) {
+            synchronized (mTasks) {
+                mTasks.remove(task);
+            }
+        }
+    }
+
+    /**
+     * Runs its tasks one at a time, in submission order, on a lane.
+     * Replaces a dedicated single-thread executor without holding a thread while idle.
+     */
+    public class SerialExecutor implements Executor {
+        private final Lane mLane;
+        private final Priority mDefaultPriority;
+        private final ArrayDeque<Task> mQueue;
+        private Task mActive;
+        private boolean mIsShutdown;
+
+        private SerialExecutor(Lane lane, Priority defaultPriority) {
+            mLane = lane;
+            mDefaultPriority = defaultPriority;
+            mQueue = new ArrayDeque<>();
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            execute(mDefaultPriority, runnable);
+        }
+
+        /**
+         * Queues a task that runs at the given priority once the previous tasks have run.
+         * @throws RejectedExecutionException if the executor has been shut down
+         */
+        public synchronized void execute(Priority priority, Runnable runnable) {
+            if (mIsShutdown) throw new RejectedExecutionException("Serial executor shut down");
+
+            mQueue.add(new Task(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    scheduleNext();
+                }
+            }, priority));
+            if (mActive == null) scheduleNext();
+        }
+
+        /**
+         * Drops the queued tasks and rejects further tasks. The running task is left to complete.
+         */
+        public synchronized void shutdown() {
+            mIsShutdown = true;
+            mQueue.clear();
+        }
+
+        public synchronized boolean isShutdown() {
+            return mIsShutdown;
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mQueue.poll();
+            if (mActive != null) submit(mLane, mActive);
+        }
+    }
+
+    /**
+     * Thread pool of a lane, collecting queue-time metrics.
+     */
+    private static class LaneExecutor extends ThreadPoolExecutor {
+        private final Lane mLane;
+
+        // Metrics
+        private final AtomicLong mStartedCount = new AtomicLong();
+        private final AtomicLong mTotalQueueTimeNs = new AtomicLong();
+        private final AtomicLong mMaxQueueTimeNs = new AtomicLong();
+
+        private LaneExecutor(Lane lane) {
+            super(lane.threadCount, lane.threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(), new LaneThreadFactory(lane));
+            mLane = lane;
+            allowCoreThreadTimeOut(true);
+        }
+
+        private void onTaskStarted(Task task) {
+            long queueTimeNs = System.nanoTime() - task.mSubmitTimeNs;
+            mStartedCount.incrementAndGet();
+            mTotalQueueTimeNs.addAndGet(queueTimeNs);
+            long max;
+            while (queueTimeNs > (max = mMaxQueueTimeNs.get()) && !mMaxQueueTimeNs.compareAndSet(max, queueTimeNs)) {
+                // Retry
+            }
+        }
+
+        private String getStats() {
+            long startedCount = mStartedCount.get();
+            return mLane + " { started: " + startedCount + ", queued: " + getQueue().size()
+                    + ", average queue time: " + (startedCount == 0 ? 0 : mTotalQueueTimeNs.get() / startedCount / 1000000) + " ms"
+                    + ", max queue time: " + mMaxQueueTimeNs.get() / 1000000 + " ms }";
+        }
+    }
+
+    private static class LaneThreadFactory implements ThreadFactory {
+        private final Lane mLane;
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        private LaneThreadFactory(Lane lane) {
+            mLane = lane;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "lane-" + mLane.name().toLowerCase() + "-" + mThreadCount.incrementAndGet());
+        }
+    }
+
+    /**
+     * Gets the process-wide executors.
+     */
+    public static synchronized TaskExecutors getInstance() {
+        if (INSTANCE == null) INSTANCE = new TaskExecutors();
+        return INSTANCE;
+    }
+
+    private TaskExecutors() {
+        mLanes = new LaneExecutor[Lane.values().length];
+        for (Lane lane : Lane.values()) {
+            mLanes[lane.ordinal()] = new LaneExecutor(lane);
+        }
+    }
+
+    /**
+     * Creates a scope for the tasks of a fragment or presenter.
+     * @param name Name of the owner, for logging
+     */
+    public Scope newScope(String name) {
+        return new Scope(name);
+    }
+
+    /**
+     * Creates an executor that runs its tasks one at a time, in order, on a lane.
+     * @param defaultPriority Priority of tasks submitted with {@link SerialExecutor#execute(Runnable)}
+     */
+    public SerialExecutor newSerialExecutor(Lane lane, Priority defaultPriority) {
+        return new SerialExecutor(lane, defaultPriority);
+    }
+
+    /**
+     * Submits a task that is not owned by any scope, e.g. the teardown of a destroyed owner.
+     * @return Submitted task
+     */
+    public Task execute(Lane lane, Priority priority, Runnable runnable) {
+        Task task = new Task(runnable, priority);
+        submit(lane, task);
+        return task;
+    }
+
+    /**
+     * Gets the queue-time metrics of all lanes.
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        for (LaneExecutor lane : mLanes) {
+            if (stats.length() > 0) stats.append(", ");
+            stats.append(lane.getStats());
+        }
+        return stats.toString();
+    }
+
+    private void submit(Lane lane, Task task) {
+        LaneExecutor executor = mLanes[lane.ordinal()];
+        task.mLane = executor;
+        task.mSubmitTimeNs = System.nanoTime();
+        executor.execute(task);
+    }
+}
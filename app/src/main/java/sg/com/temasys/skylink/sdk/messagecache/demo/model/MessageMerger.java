@@ -0,0 +1,179 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+import java.util.Arrays;
+
+/**
+ * Merges messages from different sources (server history, local cache, live messages) into one timeline
+ * ordered by timestamp.
+ * Only the timeline messages within the timestamp span of the incoming messages are visited and moved,
+ * so merging a live batch or an older page costs about its own size, not the size of the timeline.
+ * A message is identified by its sender, timestamp and content (compared by hash first), so messages
+ * already in the timeline are not inserted again. Existing messages keep their IDs.
+ */
+public class MessageMerger {
+
+    private MessageMerger() {}
+
+    /**
+     * Merges the incoming messages into the target store.
+     * The target is expected in ascending timestamp order, which holds as long as it is only modified by merging.
+     * Incoming messages are sorted first if needed, e.g. live messages in arrival order.
+     * @param target Store to merge into, modified in place
+     * @param incoming Messages to merge
+     * @return Ranges of inserted messages as (position, count) pairs in ascending position order,
+     *         positions are relative to the merged target
+     */
+    public static int[] merge(MessageStore target, MessageStore incoming) {
+        int incomingSize = incoming.size();
+        if (incomingSize == 0) return new int[0];
+        incoming = sortByTimestamp(incoming);
+
+        // Timeline messages outside the span of the incoming messages stay where they are
+        int windowStart = lowerBound(target, incoming.getTimestamp(0));
+        int windowEnd = upperBound(target, incoming.getTimestamp(incomingSize - 1));
+
+        // Fast path: nothing to interleave, e.g. newer live messages or an older page
+        if (windowStart == windowEnd) {
+            target.insertAll(windowStart, incoming);
+            return new int[]{windowStart, incomingSize};
+        }
+
+        MessageStore merged = new MessageStore(windowEnd - windowStart + incomingSize);
+        RangeBuilder ranges = new RangeBuilder();
+        int i = windowStart;
+        int j = 0;
+        while (i < windowEnd || j < incomingSize) {
+            if (j == incomingSize || (i < windowEnd && target.getTimestamp(i) < incoming.getTimestamp(j))) {
+                merged.copyFrom(target, i, target.getId(i));
+                i++;
+            } else if (i == windowEnd || incoming.getTimestamp(j) < target.getTimestamp(i)) {
+                ranges.add(windowStart + merged.size());
+                merged.copyFrom(incoming, j, target.nextId());
+                j++;
+            } else {
+                // Same timestamp: copy the group of existing messages, then the incoming messages not in it
+                long timestamp = target.getTimestamp(i);
+                int groupStart = i;
+                while (i < windowEnd && target.getTimestamp(i) == timestamp) {
+                    merged.copyFrom(target, i, target.getId(i));
+                    i++;
+                }
+                while (j < incomingSize && incoming.getTimestamp(j) == timestamp) {
+                    if (!containsMessage(target, groupStart, i, incoming, j)) {
+                        ranges.add(windowStart + merged.size());
+                        merged.copyFrom(incoming, j, target.nextId());
+                    }
+                    j++;
+                }
+            }
+        }
+
+        int[] insertedRanges = ranges.toArray();
+        if (insertedRanges.length > 0) target.replaceRange(windowStart, windowEnd, merged);
+        return insertedRanges;
+    }
+
+    /**
+     * Gets the messages in ascending timestamp order, keeping the order of messages with the same timestamp.
+     * @return The given store if already sorted, a sorted copy otherwise
+     */
+    static MessageStore sortByTimestamp(MessageStore messages) {
+        int size = messages.size();
+        boolean isSorted = true;
+        for (int i = 1; i < size && isSorted; i++) {
+            isSorted = messages.getTimestamp(i - 1) <= messages.getTimestamp(i);
+        }
+        if (isSorted) return messages;
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(messages.getTimestamp(a), messages.getTimestamp(b))); // Stable
+        MessageStore sorted = new MessageStore(size);
+        for (Integer position : order) {
+            sorted.copyFrom(messages, position, sorted.nextId());
+        }
+        return sorted;
+    }
+
+    /**
+     * Gets the position of the first message not older than the timestamp.
+     */
+    private static int lowerBound(MessageStore messages, long timestamp) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (messages.getTimestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the position of the first message newer than the timestamp.
+     */
+    private static int upperBound(MessageStore messages, long timestamp) {
+        int low = 0;
+        int high = messages.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (messages.getTimestamp(middle) <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Checks whether a message equal to incoming[index] exists in target[start, end).
+     */
+    private static boolean containsMessage(MessageStore target, int start, int end, MessageStore incoming, int index) {
+        String senderId = incoming.getSenderId(index);
+        String data = incoming.getData(index);
+        int dataHash = data == null ? 0 : data.hashCode();
+        for (int k = start; k < end; k++) {
+            String targetData = target.getData(k);
+            int targetDataHash = targetData == null ? 0 : targetData.hashCode();
+            if (targetDataHash == dataHash
+                    && equals(target.getSenderId(k), senderId)
+                    && equals(targetData, data)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Collects inserted positions into (position, count) ranges.
+     */
+    private static class RangeBuilder {
+        private int[] mRanges = new int[8];
+        private int mLength;
+
+        void add(int position) {
+            // Extend the last range if the position follows it
+            if (mLength > 0 && mRanges[mLength - 2] + mRanges[mLength - 1] == position) {
+                mRanges[mLength - 1]++;
+                return;
+            }
+            if (mLength == mRanges.length) mRanges = Arrays.copyOf(mRanges, mLength * 2);
+            mRanges[mLength++] = position;
+            mRanges[mLength++] = 1;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mRanges, mLength);
+        }
+    }
+}
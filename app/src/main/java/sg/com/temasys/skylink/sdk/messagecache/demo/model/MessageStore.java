@@ -0,0 +1,367 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.Constants;
+import sg.com.temasys.skylink.sdk.sampleapp.service.ServerMessageOutbox;
+
+/**
+ * Compact, typed list of chat messages.
+ * Sender IDs are interned into a table and referenced by index, timestamps are kept in a primitive array
+ * and message contents are kept separately, so reading a message does not allocate.
+ * Free room is kept at both ends of the arrays, so that appending and prepending (e.g. older cached pages)
+ * are amortized, and inserting shifts the shorter side only.
+ * JSON messages from the SDK are converted once with {@link #fromJson(JSONArray)}.
+ * Not thread safe, a store should be modified by one thread only.
+ */
+public class MessageStore {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int BYTES_PER_SLOT = 8 + 4 + 8 + 4 + 4; // ID, sender index, timestamp, data and time text references
+    private static final int BYTES_PER_STRING = 40; // Approximate String object overhead
+
+    private String[] mSenderTable; // Distinct sender IDs
+    private final Map<String, Integer> mSenderIndexes; // Sender ID -> index in mSenderTable
+    private int mSenderCount;
+
+    private long[] mIds; // Stable ID per message, unique within the store
+    private long mNextId;
+    private int[] mSenders; // Index of the sender in mSenderTable, per message
+    private long[] mTimestamps;
+    private String[] mData;
+    private String[] mTimeTexts; // Lazily formatted timestamps
+    private int mStart; // Array index of the first message
+    private int mSize;
+    private long mDataBytes; // Estimated size of message contents
+
+    public MessageStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public MessageStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mSenderTable = new String[INITIAL_CAPACITY];
+        mSenderIndexes = new HashMap<>();
+        mIds = new long[capacity];
+        mSenders = new int[capacity];
+        mTimestamps = new long[capacity];
+        mData = new String[capacity];
+        mTimeTexts = new String[capacity];
+    }
+
+    /**
+     * Converts JSON messages from the SDK (keyed by {@link Constants#MSG_SENDER_ID}, {@link Constants#MSG_DATA}
+     * and {@link Constants#MSG_TIMESTAMP}) to a message store.
+     * @param messages JSON array of messages
+     * @return Message store holding all the messages
+     */
+    public static MessageStore fromJson(JSONArray messages) {
+        return fromJson(messages, 0, messages.length());
+    }
+
+    /**
+     * Converts a range of JSON messages from the SDK to a message store.
+     * @param messages JSON array of messages
+     * @param start Index of the first message to convert (inclusive)
+     * @param end Index of the last message to convert (exclusive)
+     * @return Message store holding the messages in the range
+     */
+    public static MessageStore fromJson(JSONArray messages, int start, int end) {
+        return fromJson(messages, start, end, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    /**
+     * Converts JSON messages from the SDK to a message store, skipping messages within a timestamp range
+     * (e.g. messages that are already held locally). Skipped messages are not decoded beyond their timestamp.
+     * @param messages JSON array of messages
+     * @param skipFrom Start of the timestamp range to skip (inclusive)
+     * @param skipTo End of the timestamp range to skip (inclusive)
+     * @return Message store holding the messages outside the range
+     */
+    public static MessageStore fromJson(JSONArray messages, long skipFrom, long skipTo) {
+        return fromJson(messages, 0, messages.length(), skipFrom, skipTo);
+    }
+
+    /**
+     * Converts a range of JSON messages from the SDK to a message store, skipping messages within a timestamp range.
+     * Batched messages (see {@link ServerMessageOutbox}) are unpacked, sharing the timestamp of their batch.
+     * Only batches stored as JSON objects are unpacked, string messages are taken as is.
+     * Malformed messages (e.g. missing their sender or timestamp) are logged and skipped.
+     * @param messages JSON array of messages
+     * @param start Index of the first message to convert (inclusive)
+     * @param end Index of the last message to convert (exclusive)
+     * @param skipFrom Start of the timestamp range to skip (inclusive)
+     * @param skipTo End of the timestamp range to skip (inclusive)
+     * @return Message store holding the messages in the index range and outside the timestamp range
+     */
+    public static MessageStore fromJson(JSONArray messages, int start, int end, long skipFrom, long skipTo) {
+        MessageStore store = new MessageStore(end - start);
+        for (int i = start; i < end; i++) {
+            try {
+                JSONObject msg = messages.getJSONObject(i);
+                long timestamp = msg.getLong(Constants.MSG_TIMESTAMP);
+                if (timestamp >= skipFrom && timestamp <= skipTo) continue;
+
+                String senderId = msg.getString(Constants.MSG_SENDER_ID);
+                Object data = msg.get(Constants.MSG_DATA);
+                List<Object> batchedData = ServerMessageOutbox.unpack(data);
+                if (batchedData == null) {
+                    store.add(senderId, String.valueOf(data), timestamp);
+                } else {
+                    for (Object batchedMessage : batchedData) {
+                        store.add(senderId, String.valueOf(batchedMessage), timestamp);
+                    }
+                }
+            } catch (JSONException e) {
+                // Messages come from the server or a cache file, one bad message must not fail the others
+                Log.w(Constants.LOG_TAG, "Skipping malformed message at index " + i + ": " + e.getMessage());
+            }
+        }
+        return store;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets the stable ID of a message, which does not change when messages are inserted before it.
+     */
+    public long getId(int position) {
+        return mIds[mStart + position];
+    }
+
+    public String getSenderId(int position) {
+        return mSenderTable[mSenders[mStart + position]];
+    }
+
+    public String getData(int position) {
+        return mData[mStart + position];
+    }
+
+    public long getTimestamp(int position) {
+        return mTimestamps[mStart + position];
+    }
+
+    /**
+     * Gets the displayable time of a message. Formatted once per message and reused afterwards.
+     */
+    public String getTimeText(int position) {
+        String timeText = mTimeTexts[mStart + position];
+        if (timeText == null) {
+            timeText = new Date(mTimestamps[mStart + position]).toString();
+            mTimeTexts[mStart + position] = timeText;
+        }
+        return timeText;
+    }
+
+    /**
+     * Estimates the heap used by this store, in bytes.
+     */
+    public long getEstimatedBytes() {
+        long senderBytes = 0;
+        for (int i = 0; i < mSenderCount; i++) {
+            senderBytes += estimateBytes(mSenderTable[i]);
+        }
+        return (long) mSenders.length * BYTES_PER_SLOT + mDataBytes + senderBytes;
+    }
+
+    /**
+     * Appends a message to the end of the store.
+     */
+    public void add(String senderId, String data, long timestamp) {
+        add(senderId, data, timestamp, null, mNextId++);
+    }
+
+    /**
+     * Appends all messages of the other store to the end of this store.
+     */
+    public void addAll(MessageStore other) {
+        insertAll(mSize, other);
+    }
+
+    /**
+     * Inserts all messages of the other store at the given position of this store.
+     */
+    public void insertAll(int position, MessageStore other) {
+        if (position < 0 || position > mSize) throw new IndexOutOfBoundsException("Invalid position " + position);
+
+        int count = other.mSize;
+        openGap(position, count);
+        for (int i = 0; i < count; i++) {
+            set(position + i, other, i, mNextId++);
+        }
+        mDataBytes += other.mDataBytes;
+    }
+
+    /**
+     * Removes all messages.
+     */
+    public void clear() {
+        Arrays.fill(mData, mStart, mStart + mSize, null);
+        Arrays.fill(mTimeTexts, mStart, mStart + mSize, null);
+        Arrays.fill(mSenderTable, 0, mSenderCount, null);
+        mSenderIndexes.clear();
+        mSenderCount = 0;
+        mStart = 0;
+        mSize = 0;
+        mDataBytes = 0;
+    }
+
+    /**
+     * Appends a message of another store with the given ID.
+     */
+    void copyFrom(MessageStore source, int position, long id) {
+        int index = source.mStart + position;
+        add(source.getSenderId(position), source.mData[index], source.mTimestamps[index], source.mTimeTexts[index], id);
+    }
+
+    /**
+     * Reserves a new message ID.
+     */
+    long nextId() {
+        return mNextId++;
+    }
+
+    /**
+     * Replaces the messages in [start, end) with the messages of another store, keeping their IDs.
+     * Only the messages on the shorter side of the range are shifted.
+     * @param replacement Messages replacing the range, at least as many as in the range
+     */
+    void replaceRange(int start, int end, MessageStore replacement) {
+        if (start < 0 || start > end || end > mSize) throw new IndexOutOfBoundsException("Invalid range " + start + ", " + end);
+        if (replacement.mSize < end - start) throw new IllegalArgumentException("Replacement smaller than the range");
+
+        for (int i = start; i < end; i++) {
+            mDataBytes -= estimateBytes(mData[mStart + i]);
+        }
+        openGap(end, replacement.mSize - (end - start));
+        for (int i = 0; i < replacement.mSize; i++) {
+            set(start + i, replacement, i, replacement.getId(i));
+        }
+        mDataBytes += replacement.mDataBytes;
+    }
+
+    private static long estimateBytes(String string) {
+        return string == null ? 0 : BYTES_PER_STRING + 2L * string.length();
+    }
+
+    private void add(String senderId, String data, long timestamp, String timeText, long id) {
+        reserve(0, 1);
+        int index = mStart + mSize;
+        mIds[index] = id;
+        mSenders[index] = internSender(senderId);
+        mTimestamps[index] = timestamp;
+        mData[index] = data;
+        mTimeTexts[index] = timeText;
+        mDataBytes += estimateBytes(data);
+        mSize++;
+    }
+
+    /**
+     * Sets the message at a position from a message of another store, without accounting its size.
+     */
+    private void set(int position, MessageStore source, int sourcePosition, long id) {
+        int index = mStart + position;
+        int sourceIndex = source.mStart + sourcePosition;
+        mIds[index] = id;
+        mSenders[index] = internSender(source.getSenderId(sourcePosition));
+        mTimestamps[index] = source.mTimestamps[sourceIndex];
+        mData[index] = source.mData[sourceIndex];
+        mTimeTexts[index] = source.mTimeTexts[sourceIndex];
+    }
+
+    /**
+     * Makes room for count messages at the given position, moving the messages before it to the front
+     * or the messages after it to the back, whichever are fewer. The room is left to be set.
+     */
+    private void openGap(int position, int count) {
+        if (count == 0) return;
+
+        if (position < mSize - position) {
+            reserve(count, 0);
+            moveMessages(mStart, mStart - count, position);
+            mStart -= count;
+        } else {
+            reserve(0, count);
+            moveMessages(mStart + position, mStart + position + count, mSize - position);
+        }
+        mSize += count;
+    }
+
+    private void moveMessages(int from, int to, int count) {
+        System.arraycopy(mIds, from, mIds, to, count);
+        System.arraycopy(mSenders, from, mSenders, to, count);
+        System.arraycopy(mTimestamps, from, mTimestamps, to, count);
+        System.arraycopy(mData, from, mData, to, count);
+        System.arraycopy(mTimeTexts, from, mTimeTexts, to, count);
+    }
+
+    private int internSender(String senderId) {
+        Integer index = mSenderIndexes.get(senderId);
+        if (index != null) return index;
+
+        if (mSenderCount == mSenderTable.length) {
+            mSenderTable = Arrays.copyOf(mSenderTable, mSenderCount * 2);
+        }
+        mSenderTable[mSenderCount] = senderId;
+        mSenderIndexes.put(senderId, mSenderCount);
+        return mSenderCount++;
+    }
+
+    /**
+     * Ensures free room for the given number of messages before the first and after the last message.
+     * Messages are moved to the middle of the arrays, which are grown first if they would be more than 2/3 full,
+     * so that the room at either end is used up again only after a number of messages proportional to the size.
+     */
+    private void reserve(int front, int back) {
+        int capacity = mSenders.length;
+        if (mStart >= front && capacity - mStart - mSize >= back) return;
+
+        int needed = mSize + front + back;
+        int newCapacity = needed * 3 / 2 > capacity ? Math.max(needed * 2, INITIAL_CAPACITY) : capacity;
+        int newStart = front + (newCapacity - needed) / 2;
+        if (newCapacity != capacity) {
+            mIds = grow(mIds, newCapacity, newStart);
+            mSenders = grow(mSenders, newCapacity, newStart);
+            mTimestamps = grow(mTimestamps, newCapacity, newStart);
+            mData = grow(mData, newCapacity, newStart);
+            mTimeTexts = grow(mTimeTexts, newCapacity, newStart);
+        } else {
+            moveMessages(mStart, newStart, mSize);
+            // Release the references left behind
+            int clearFrom = newStart > mStart ? mStart : Math.max(newStart + mSize, mStart);
+            int clearTo = newStart > mStart ? Math.min(newStart, mStart + mSize) : mStart + mSize;
+            Arrays.fill(mData, clearFrom, clearTo, null);
+            Arrays.fill(mTimeTexts, clearFrom, clearTo, null);
+        }
+        mStart = newStart;
+    }
+
+    private long[] grow(long[] array, int capacity, int start) {
+        long[] grown = new long[capacity];
+        System.arraycopy(array, mStart, grown, start, mSize);
+        return grown;
+    }
+
+    private int[] grow(int[] array, int capacity, int start) {
+        int[] grown = new int[capacity];
+        System.arraycopy(array, mStart, grown, start, mSize);
+        return grown;
+    }
+
+    private String[] grow(String[] array, int capacity, int start) {
+        String[] grown = new String[capacity];
+        System.arraycopy(array, mStart, grown, start, mSize);
+        return grown;
+    }
+}
@@ -0,0 +1,23 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+/**
+ * A remote peer joining or leaving the room, at a position of the {@link PeerSnapshot}.
+ * Changes are delivered in batches, in order. The position of a change applies to the list as modified
+ * by the changes before it, so that changes can be notified to a RecyclerView one after the other.
+ */
+public final class PeerChange {
+    public enum Type {
+        ADDED,
+        REMOVED,
+    }
+
+    public final Type type;
+    public final String peerId;
+    public final int position;
+
+    public PeerChange(Type type, String peerId, int position) {
+        this.type = type;
+        this.peerId = peerId;
+        this.position = position;
+    }
+}
@@ -0,0 +1,157 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of remote peer IDs, in join order.
+ * Peer IDs are kept in small chunks that are never modified once built. A snapshot built from the previous one
+ * with {@link Builder} shares all the chunks that did not change, so a join or leave copies one chunk
+ * and the chunk table instead of the whole list.
+ * Thread safe.
+ */
+public final class PeerSnapshot extends AbstractList<String> implements RandomAccess {
+    public static final PeerSnapshot EMPTY = new PeerSnapshot(new String[0][]);
+
+    private static final int CHUNK_SIZE = 32;
+
+    private final String[][] mChunks; // Shared between snapshots, may contain empty chunks
+    private final int[] mOffsets; // Position of the first peer of each chunk
+    private final int mSize;
+
+    private PeerSnapshot(String[][] chunks) {
+        mChunks = chunks;
+        mOffsets = new int[chunks.length];
+        int size = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            mOffsets[i] = size;
+            size += chunks[i].length;
+        }
+        mSize = size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+
+        // Last chunk starting at or before the index, which holds it as chunks after it start past the index
+        int low = 0;
+        int high = mChunks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mOffsets[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return mChunks[low][index - mOffsets[low]];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Builds snapshots of a changing peer list, each sharing the unchanged chunks of the previous one.
+     * Not thread safe.
+     */
+    public static final class Builder {
+        private final List<String[]> mChunks;
+        private final Map<String, Integer> mChunkIndexes; // Peer ID -> index of the chunk holding it
+        private int mSize;
+
+        public Builder() {
+            mChunks = new ArrayList<>();
+            mChunkIndexes = new HashMap<>();
+        }
+
+        /**
+         * Adds a peer at the end of the list.
+         * @return Position of the added peer, or -1 if the peer is in the list already
+         */
+        public int add(String peerId) {
+            if (mChunkIndexes.containsKey(peerId)) return -1;
+
+            int lastIndex = mChunks.size() - 1;
+            String[] lastChunk = lastIndex < 0 ? null : mChunks.get(lastIndex);
+            if (lastChunk == null || lastChunk.length == CHUNK_SIZE) {
+                mChunks.add(new String[]{peerId});
+                lastIndex++;
+            } else {
+                String[] chunk = Arrays.copyOf(lastChunk, lastChunk.length + 1);
+                chunk[lastChunk.length] = peerId;
+                mChunks.set(lastIndex, chunk);
+            }
+            mChunkIndexes.put(peerId, lastIndex);
+            return mSize++;
+        }
+
+        /**
+         * Removes a peer, the peers after it move up by one.
+         * @return Position of the removed peer, or -1 if the peer is not in the list
+         */
+        public int remove(String peerId) {
+            Integer chunkIndex = mChunkIndexes.remove(peerId);
+            if (chunkIndex == null) return -1;
+
+            String[] chunk = mChunks.get(chunkIndex);
+            int indexInChunk = 0;
+            while (!chunk[indexInChunk].equals(peerId)) indexInChunk++;
+
+            String[] newChunk = new String[chunk.length - 1];
+            System.arraycopy(chunk, 0, newChunk, 0, indexInChunk);
+            System.arraycopy(chunk, indexInChunk + 1, newChunk, indexInChunk, chunk.length - indexInChunk - 1);
+            mChunks.set(chunkIndex, newChunk);
+
+            int position = indexInChunk;
+            for (int i = 0; i < chunkIndex; i++) {
+                position += mChunks.get(i).length;
+            }
+            mSize--;
+
+            // Many leaves leave many sparse chunks behind, repack them
+            if (mChunks.size() > 2 * (mSize / CHUNK_SIZE + 1)) compact();
+            return position;
+        }
+
+        public void clear() {
+            mChunks.clear();
+            mChunkIndexes.clear();
+            mSize = 0;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * Builds a snapshot of the current list.
+         */
+        public PeerSnapshot build() {
+            if (mSize == 0) return EMPTY;
+            return new PeerSnapshot(mChunks.toArray(new String[mChunks.size()][]));
+        }
+
+        /**
+         * Repacks the peers into full chunks. The next snapshot does not share chunks with the previous one.
+         */
+        private void compact() {
+            List<String[]> chunks = new ArrayList<>(mChunks);
+            mChunks.clear();
+            mChunkIndexes.clear();
+            mSize = 0;
+            for (String[] chunk : chunks) {
+                for (String peerId : chunk) {
+                    add(peerId);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package sg.com.temasys.skylink.sdk.messagecache.demo.ui;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,19 +20,27 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import sg.com.temasys.skylink.sdk.messagecache.demo.ChatPresenter;
+import sg.com.temasys.skylink.sdk.messagecache.demo.ChatSession;
 import sg.com.temasys.skylink.sdk.messagecache.demo.Constants;
+import sg.com.temasys.skylink.sdk.messagecache.demo.PendingMessageQueue;
 import sg.com.temasys.skylink.sdk.messagecache.demo.R;
+import sg.com.temasys.skylink.sdk.messagecache.demo.RoomTimelineCache;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageMerger;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerChange;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerSnapshot;
 
 public class ChatUi implements ChatPresenter.SkylinkEvents {
     private ChatViewModel mChatViewModel;
     private View mChatView;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private String mRoomName; // Room of the displayed timeline, accessed in the main thread only
 
     public interface UserEvents {
         void onNewRoomSelected(String newRoomName);
@@ -42,8 +53,10 @@ public class ChatUi implements ChatPresenter.SkylinkEvents {
         protected final MutableLiveData<Integer> mSelectedRoomPosition;
         protected final MutableLiveData<String> mConnectionState;
         protected final MutableLiveData<String> mStatus;
-        protected final MutableLiveData<List<String>> mPeers;
-        protected final MutableLiveData<JSONArray> mStoredMessages;
+        protected final MutableLiveData<PeersRecyclerViewAdapter.Change> mPeers;
+        protected final MutableLiveData<MessagesRecyclerViewAdapter.Change> mStoredMessages; // Messages are modified in the main thread only
+        protected final Map<Long, MessagesRecyclerViewAdapter.SendState> mSendStates; // Modified in the main thread only
+        protected final MutableLiveData<Long> mSendStateChange; // Timestamp of the message whose send state changed last
 
         public ChatViewModel() {
             mIsWaiting = new MutableLiveData<>();
@@ -53,6 +66,8 @@ public class ChatUi implements ChatPresenter.SkylinkEvents {
             mStatus = new MutableLiveData<>();
             mPeers = new MutableLiveData<>();
             mStoredMessages = new MutableLiveData<>();
+            mSendStates = new HashMap<>();
+            mSendStateChange = new MutableLiveData<>();
         }
     }
 
@@ -103,12 +118,17 @@ public class ChatUi implements ChatPresenter.SkylinkEvents {
         // Bind peers recyclerview to the view model
         RecyclerView peersRecyclerView = mChatView.findViewById(R.id.peers_recyclerview);
         peersRecyclerView.setLayoutManager(new LinearLayoutManager(owner.getContext()));
-        mChatViewModel.mPeers.observe(owner, newPeerList -> peersRecyclerView.setAdapter(new PeersRecyclerViewAdapter(owner.getContext(), newPeerList)));
+        PeersRecyclerViewAdapter peersAdapter = new PeersRecyclerViewAdapter(owner.getContext());
+        peersRecyclerView.setAdapter(peersAdapter);
+        mChatViewModel.mPeers.observe(owner, peersAdapter::applyChange);
 
         // Bind messages recyclerview to the view model
         RecyclerView messagesRecyclerView = mChatView.findViewById(R.id.messages_recyclerview);
         messagesRecyclerView.setLayoutManager(new LinearLayoutManager(owner.getContext()));
-        mChatViewModel.mStoredMessages.observe(owner, storeMessages -> messagesRecyclerView.setAdapter(new MessagesRecyclerViewAdapter(owner.getContext(), storeMessages)));
+        MessagesRecyclerViewAdapter messagesAdapter = new MessagesRecyclerViewAdapter(owner.getContext(), mChatViewModel.mSendStates);
+        messagesRecyclerView.setAdapter(messagesAdapter);
+        mChatViewModel.mStoredMessages.observe(owner, messagesAdapter::applyChange);
+        mChatViewModel.mSendStateChange.observe(owner, messagesAdapter::onSendStateChanged);
 
         // Set send button on click listener
         sendButton.setOnClickListener(v -> {
@@ -125,15 +145,56 @@ public class ChatUi implements ChatPresenter.SkylinkEvents {
     }
 
     public void setRoomNames(String[] roomNames) {
-        mChatViewModel.mRoomNames.postValue(roomNames);
+        setOrPostValue(mChatViewModel.mRoomNames, roomNames);
     }
 
     public void setWaiting(boolean isWaiting) {
-        mChatViewModel.mIsWaiting.postValue(isWaiting);
+        setOrPostValue(mChatViewModel.mIsWaiting, isWaiting);
+    }
+
+    /**
+     * Displays the timeline of a room. Further messages are merged into the given timeline in place.
+     * @param roomName Skylink Room name
+     * @param timeline Messages of the room, e.g. from {@link RoomTimelineCache}
+     */
+    public void showTimeline(String roomName, MessageStore timeline) {
+        mMainHandler.post(() -> {
+            mRoomName = roomName;
+            mChatViewModel.mStoredMessages.setValue(MessagesRecyclerViewAdapter.Change.reset(timeline));
+        });
+    }
+
+    /**
+     * Displays the timeline of a room kept by a {@link ChatSession} across view recreation, together with the send states
+     * of its sent messages, right away so that the first frame of the view shows them.
+     * Must be called in the main thread, after {@link #setRoomNames(String[])}.
+     * @param roomName Skylink Room name, selected in the room spinner
+     * @param timeline Messages of the room, or null if there are none
+     * @param sendStates Send states of the messages sent by the local user, keyed by timestamp
+     */
+    public void restoreTimeline(String roomName, MessageStore timeline, Map<Long, MessagesRecyclerViewAdapter.SendState> sendStates) {
+        mRoomName = roomName;
+        String[] roomNames = mChatViewModel.mRoomNames.getValue();
+        int position = roomNames == null ? -1 : Arrays.asList(roomNames).indexOf(roomName);
+        if (position >= 0) mChatViewModel.mSelectedRoomPosition.setValue(position);
+        mChatViewModel.mSendStates.putAll(sendStates);
+        mChatViewModel.mStoredMessages.setValue(MessagesRecyclerViewAdapter.Change.reset(timeline));
+    }
+
+    /**
+     * Gets the room of the displayed timeline. Must be called in the main thread.
+     * @return Skylink Room name, or null if no timeline is displayed
+     */
+    public String getRoomName() {
+        return mRoomName;
     }
 
-    public void clearMessages() {
-        mChatViewModel.mStoredMessages.postValue(null);
+    /**
+     * Gets the displayed timeline, e.g. to keep it across view recreation. Must be called in the main thread.
+     * @return Displayed messages, or null if there are no messages
+     */
+    public MessageStore getTimeline() {
+        return getStoredMessages();
     }
 
     public void onMessageSent(String peerId, String message, Long timestamp) {
@@ -141,68 +202,182 @@ public class ChatUi implements ChatPresenter.SkylinkEvents {
         mChatViewModel.mStatus.postValue("Message sent.");
     }
 
+    /**
+     * Called when a message is not sent, as no room has been connected to yet.
+     */
+    public void onMessageRejected() {
+        mChatViewModel.mStatus.setValue("Error : Not connected to a room yet, the message was not sent.");
+    }
+
     @Override
     public void onConnectionStateChanged(Constants.ConnectionStates newConnectionState, String roomName) {
         switch (newConnectionState) {
             case CONNECTING:
-                mChatViewModel.mConnectionState.postValue("Connecting...");
-                mChatViewModel.mStatus.postValue("Trying to connecting to room : " + roomName);
+                setOrPostValue(mChatViewModel.mConnectionState, "Connecting...");
+                setOrPostValue(mChatViewModel.mStatus, "Trying to connecting to room : " + roomName);
                 break;
             case CONNECTED:
-                mChatViewModel.mConnectionState.postValue("Connected.");
-                mChatViewModel.mStatus.postValue("Connected to room : " + roomName);
+                setOrPostValue(mChatViewModel.mConnectionState, "Connected.");
+                setOrPostValue(mChatViewModel.mStatus, "Connected to room : " + roomName);
                 break;
             case DISCONNECTING:
-                mChatViewModel.mConnectionState.postValue("Disconnecting.");
-                mChatViewModel.mStatus.postValue("Disconnecting from room : " + roomName);
+                setOrPostValue(mChatViewModel.mConnectionState, "Disconnecting.");
+                setOrPostValue(mChatViewModel.mStatus, "Disconnecting from room : " + roomName);
                 break;
             case DISCONNECTED:
-                mChatViewModel.mConnectionState.postValue("Disconnected.");
-                mChatViewModel.mStatus.postValue("Disconnected from room : " + roomName);
+                setOrPostValue(mChatViewModel.mConnectionState, "Disconnected.");
+                setOrPostValue(mChatViewModel.mStatus, "Disconnected from room : " + roomName);
                 break;
             case FAILED:
-                mChatViewModel.mConnectionState.postValue("Connection Failed.");
-                mChatViewModel.mStatus.postValue("Failed to connect to room : " + roomName);
+                setOrPostValue(mChatViewModel.mConnectionState, "Connection Failed.");
+                setOrPostValue(mChatViewModel.mStatus, "Failed to connect to room : " + roomName);
                 break;
         }
     }
 
     @Override
-    public void onRemotePeersChanged(List<String> newPeerList) {
-        mChatViewModel.mPeers.postValue(newPeerList);
-        mChatViewModel.mStatus.postValue("Number of remote peers changed.");
+    public void onRemotePeersChanged(PeerSnapshot previousPeers, PeerSnapshot peers, List<PeerChange> changes) {
+        // Set rather than posted, so that a delta is not coalesced away while the view is active
+        mChatViewModel.mPeers.setValue(new PeersRecyclerViewAdapter.Change(previousPeers, peers, changes));
+        mChatViewModel.mStatus.setValue("Number of remote peers changed.");
     }
 
     @Override
-    public void onStoredMessagesReceived(JSONArray storedMessages) {
-        mChatViewModel.mStoredMessages.postValue(storedMessages);
+    public void onStoredMessagesReceived(String roomName, MessageStore storedMessages) {
+        // Merge with cached and live messages already displayed
+        mMainHandler.post(() -> {
+            if (!mergeIntoMessages(roomName, storedMessages)) onMessagesMissed(roomName);
+        });
         mChatViewModel.mStatus.postValue("Received stored messages from server.");
     }
 
+    /**
+     * Displays a page of locally cached messages.
+     * Can be called from any thread.
+     * The page is merged with displayed messages, so messages that are already displayed
+     * (e.g. received from the server or live) are not duplicated.
+     * Dropped if another room is displayed by then.
+     * @param roomName Skylink Room of the page
+     * @param page Cached messages, in ascending timestamp order
+     * @param isNewestPage True if this is the newest page of the room
+     */
+    public void onCachedMessagesPageLoaded(String roomName, MessageStore page, boolean isNewestPage) {
+        // Merge in the main thread, so that the current value is not stale
+        mMainHandler.post(() -> mergeIntoMessages(roomName, page));
+    }
+
+    /**
+     * Called after all locally cached messages of the displayed room have been loaded.
+     * The displayed timeline is then complete and kept in {@link RoomTimelineCache} for the next visit,
+     * unless another room is displayed by then.
+     * Can be called from any thread.
+     * @param roomName Skylink Room of the loaded messages
+     */
+    public void onCachedMessagesLoaded(String roomName) {
+        mMainHandler.post(() -> {
+            MessageStore storedMessages = getStoredMessages();
+            if (roomName.equals(mRoomName) && storedMessages != null) {
+                RoomTimelineCache.getInstance().put(mRoomName, storedMessages);
+            }
+        });
+    }
+
     @Override
-    public void onRemoteMessageReceived(String senderId, String message, Long timestamp) {
-        appendToMessages(senderId, message, timestamp);
-        mChatViewModel.mStatus.postValue("Received a message from a remote peer.");
+    public void onRemoteMessagesReceived(String roomName, MessageStore messages) {
+        if (!mergeIntoMessages(roomName, messages)) {
+            onMessagesMissed(roomName);
+            return;
+        }
+        mChatViewModel.mStatus.setValue(messages.size() == 1
+                ? "Received a message from a remote peer."
+                : "Received " + messages.size() + " messages from remote peers.");
     }
 
     @Override
     public void onMessageSendingFailed() {
-        mChatViewModel.mStatus.postValue("Error : Failed to send the message.");
+        mChatViewModel.mStatus.postValue("Error : Failed to send the message, it will be retried.");
+    }
+
+    @Override
+    public void onMessageSendStateChanged(long timestamp, String message, PendingMessageQueue.SendState state) {
+        mChatViewModel.mSendStates.put(timestamp, new MessagesRecyclerViewAdapter.SendState(message, state));
+        // Set rather than posted, so that no state change is coalesced away
+        mChatViewModel.mSendStateChange.setValue(timestamp);
+    }
+
+    @Override
+    public void onMessageSendingThrottled(boolean isThrottled) {
+        mChatViewModel.mStatus.setValue(isThrottled
+                ? "Sending too fast, messages are queued and will be sent shortly."
+                : "Sending messages again.");
     }
 
     private void appendToMessages(String peerId, String message, Long timestamp) {
-        JSONArray storedMessages = mChatViewModel.mStoredMessages.getValue();
-        if (storedMessages == null) storedMessages = new JSONArray();
-        JSONObject msg = new JSONObject();
-        try {
-            msg.put(Constants.MSG_SENDER_ID, peerId);
-            msg.put(Constants.MSG_DATA, message);
-            msg.put(Constants.MSG_TIMESTAMP, timestamp);
-        } catch (JSONException e) {
-            e.printStackTrace();
-            throw new AssertionError("Failed to create message JSONObject");
+        // Merge in the main thread, so that the current value is not stale, and by timestamp rather than at the end,
+        // as live messages carrying a newer server timestamp may be displayed already
+        mMainHandler.post(() -> {
+            MessageStore sentMessage = new MessageStore(1);
+            sentMessage.add(peerId, message, timestamp);
+            mergeIntoMessages(mRoomName, sentMessage);
+        });
+    }
+
+    /**
+     * Merges messages into the displayed messages, only inserted messages are bound.
+     * Must be called in the main thread.
+     * @param roomName Skylink Room of the messages
+     * @param messages Messages to merge, in ascending timestamp order
+     * @return False if the messages were dropped, as another room is displayed since they were handed over
+     */
+    private boolean mergeIntoMessages(String roomName, MessageStore messages) {
+        if (!TextUtils.equals(roomName, mRoomName)) return false;
+
+        MessageStore storedMessages = getStoredMessages();
+        if (storedMessages == null) {
+            mChatViewModel.mStoredMessages.setValue(MessagesRecyclerViewAdapter.Change.reset(messages));
+            return true;
+        }
+
+        int[] insertedRanges = MessageMerger.merge(storedMessages, messages);
+        if (insertedRanges.length > 0) {
+            mChatViewModel.mStoredMessages.setValue(MessagesRecyclerViewAdapter.Change.inserted(storedMessages, insertedRanges));
+            onTimelineChanged();
         }
-        storedMessages.put(msg);
-        mChatViewModel.mStoredMessages.postValue(storedMessages);
+        return true;
+    }
+
+    /**
+     * Drops the cached timeline of a room that is not displayed and so misses received messages (already journaled),
+     * the room's history is loaded and fetched again on the next visit.
+     */
+    private void onMessagesMissed(String roomName) {
+        if (roomName != null) RoomTimelineCache.getInstance().invalidate(roomName);
+    }
+
+    /**
+     * Lets the room timeline cache re-estimate the size of the displayed timeline after it has been modified.
+     */
+    private void onTimelineChanged() {
+        if (mRoomName != null) RoomTimelineCache.getInstance().onTimelineChanged(mRoomName);
+    }
+
+    /**
+     * Sets the value right away in the main thread, so that a restored view shows it in its first frame, posts it otherwise.
+     */
+    private <T> void setOrPostValue(MutableLiveData<T> liveData, T value) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            liveData.setValue(value);
+        } else {
+            liveData.postValue(value);
+        }
+    }
+
+    /**
+     * Gets the currently displayed messages. Must be called in the main thread.
+     * @return Displayed messages, or null if there are no messages
+     */
+    private MessageStore getStoredMessages() {
+        MessagesRecyclerViewAdapter.Change change = mChatViewModel.mStoredMessages.getValue();
+        return change == null ? null : change.messages;
     }
 }
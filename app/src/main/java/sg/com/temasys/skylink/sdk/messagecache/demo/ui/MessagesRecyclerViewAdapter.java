@@ -9,22 +9,76 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.Map;
 
-import java.util.Date;
-
-import sg.com.temasys.skylink.sdk.messagecache.demo.Constants;
+import sg.com.temasys.skylink.sdk.messagecache.demo.PendingMessageQueue;
 import sg.com.temasys.skylink.sdk.messagecache.demo.R;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
 
+/**
+ * Adapter of the messages list. Created once per view and updated incrementally with {@link Change}s,
+ * so that an inserted message only binds its own row.
+ * Messages sent by the local user also show their send state, see {@link #onSendStateChanged(Long)}.
+ */
 public class MessagesRecyclerViewAdapter extends RecyclerView.Adapter<MessagesRecyclerViewAdapter.ItemViewHolder> {
     private Context mContext;
-    private JSONArray mMessages;
+    private MessageStore mMessages;
+    private int mItemCount; // Number of messages the RecyclerView has been notified about
+    private final Map<Long, SendState> mSendStates; // Timestamp -> send state of messages sent by the local user
+
+    /**
+     * Describes a change of the displayed messages.
+     */
+    public static class Change {
+        public final MessageStore messages; // Messages after the change, null if there are no messages
+        public final boolean isReset; // True if all messages changed
+        public final int[] insertedRanges; // (position, count) pairs of inserted messages, in ascending position order
+        public final int count; // Total number of inserted messages
+
+        private Change(MessageStore messages, boolean isReset, int[] insertedRanges) {
+            this.messages = messages;
+            this.isReset = isReset;
+            this.insertedRanges = insertedRanges;
+            int count = 0;
+            for (int i = 1; i < insertedRanges.length; i += 2) {
+                count += insertedRanges[i];
+            }
+            this.count = count;
+        }
 
-    public MessagesRecyclerViewAdapter(Context context, JSONArray messages) {
+        public static Change reset(MessageStore messages) {
+            return new Change(messages, true, new int[0]);
+        }
+
+        /**
+         * @param insertedRanges (position, count) pairs of inserted messages, in ascending position order,
+         *                       as returned by {@link sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageMerger#merge}
+         */
+        public static Change inserted(MessageStore messages, int[] insertedRanges) {
+            return new Change(messages, false, insertedRanges);
+        }
+    }
+
+    /**
+     * Send state of a message sent by the local user.
+     */
+    public static class SendState {
+        public final String message;
+        public final PendingMessageQueue.SendState state;
+
+        public SendState(String message, PendingMessageQueue.SendState state) {
+            this.message = message;
+            this.state = state;
+        }
+    }
+
+    /**
+     * @param sendStates Send states of messages sent by the local user, keyed by timestamp. Modified in the main thread only.
+     */
+    public MessagesRecyclerViewAdapter(Context context, Map<Long, SendState> sendStates) {
         mContext = context;
-        mMessages = messages;
+        mSendStates = sendStates;
+        setHasStableIds(true);
     }
 
     protected static class ItemViewHolder extends RecyclerView.ViewHolder {
@@ -40,6 +94,47 @@ public class MessagesRecyclerViewAdapter extends RecyclerView.Adapter<MessagesRe
         }
     }
 
+    /**
+     * Applies a change of the displayed messages. Must be called in the main thread.
+     * Insertions are notified incrementally, anything that cannot be applied as an insertion
+     * (a reset, or a change that does not follow the last applied one) rebinds the whole list.
+     */
+    public void applyChange(Change change) {
+        int newItemCount = change.messages == null ? 0 : change.messages.size();
+        boolean isIncremental = !change.isReset
+                && change.messages == mMessages
+                && mItemCount + change.count == newItemCount;
+
+        mMessages = change.messages;
+        mItemCount = newItemCount;
+
+        if (isIncremental) {
+            // Ranges are in ascending order of their final positions, so each notification stays valid
+            for (int i = 0; i < change.insertedRanges.length; i += 2) {
+                notifyItemRangeInserted(change.insertedRanges[i], change.insertedRanges[i + 1]);
+            }
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Rebinds the message whose send state has changed. Must be called in the main thread.
+     * @param timestamp Timestamp of the message
+     */
+    public void onSendStateChanged(Long timestamp) {
+        SendState sendState = mSendStates.get(timestamp);
+        if (mMessages == null || sendState == null) return;
+
+        // Sent messages are among the newest ones
+        for (int position = mItemCount - 1; position >= 0; position--) {
+            if (mMessages.getTimestamp(position) == timestamp && sendState.message.equals(mMessages.getData(position))) {
+                notifyItemChanged(position);
+                return;
+            }
+        }
+    }
+
     @NonNull
     @Override
     public ItemViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -48,20 +143,36 @@ public class MessagesRecyclerViewAdapter extends RecyclerView.Adapter<MessagesRe
 
     @Override
     public void onBindViewHolder(@NonNull ItemViewHolder holder, int position) {
-        try {
-            JSONObject msg = (JSONObject) mMessages.get(position);
-            holder.senderIdTextView.setText(msg.getString(Constants.MSG_SENDER_ID));
-            holder.messageTextView.setText(msg.getString(Constants.MSG_DATA));
-            holder.timeTextView.setText(new Date(msg.getLong(Constants.MSG_TIMESTAMP)).toString());
-        } catch (JSONException e) {
-            e.printStackTrace();
-            throw new AssertionError("Failed to read from message JSONObject");
+        holder.senderIdTextView.setText(mMessages.getSenderId(position));
+        holder.messageTextView.setText(mMessages.getData(position));
+
+        SendState sendState = mSendStates.get(mMessages.getTimestamp(position));
+        if (sendState != null && sendState.message.equals(mMessages.getData(position))) {
+            holder.timeTextView.setText(mContext.getString(R.string.message_time_with_send_state,
+                    mMessages.getTimeText(position), mContext.getString(getSendStateText(sendState.state))));
+        } else {
+            holder.timeTextView.setText(mMessages.getTimeText(position));
+        }
+    }
+
+    private static int getSendStateText(PendingMessageQueue.SendState state) {
+        switch (state) {
+            case PENDING:
+                return R.string.message_send_state_pending;
+            case FAILED:
+                return R.string.message_send_state_failed;
+            default:
+                return R.string.message_send_state_sent;
         }
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mMessages.getId(position);
+    }
+
     @Override
     public int getItemCount() {
-        if (mMessages == null) return 0;
-        return mMessages.length();
+        return mItemCount;
     }
 }
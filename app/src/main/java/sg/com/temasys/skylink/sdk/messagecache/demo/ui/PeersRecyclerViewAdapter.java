@@ -9,13 +9,39 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import sg.com.temasys.skylink.sdk.messagecache.demo.R;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerChange;
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.PeerSnapshot;
 
+/**
+ * Adapter of the peers list. Created once per view and updated with the joins and leaves of a {@link Change},
+ * so that only joined and left peers are bound, without diffing the whole list.
+ */
 public class PeersRecyclerViewAdapter extends RecyclerView.Adapter<PeersRecyclerViewAdapter.ItemViewHolder> {
     private Context mContext;
-    private List<String> mPeers;
+    private PeerSnapshot mPeers;
+    private final Map<String, Long> mPeerItemIds; // Peer ID -> stable item ID
+    private long mNextItemId;
+
+    /**
+     * Describes a change of the peers list.
+     */
+    public static class Change {
+        public final PeerSnapshot previousPeers; // Peers the changes apply to, null if unknown
+        public final PeerSnapshot peers; // Peers after the changes
+        public final List<PeerChange> changes; // Joins and leaves, in order
+
+        public Change(PeerSnapshot previousPeers, PeerSnapshot peers, List<PeerChange> changes) {
+            this.previousPeers = previousPeers;
+            this.peers = peers;
+            this.changes = changes;
+        }
+    }
 
     protected static class ItemViewHolder extends RecyclerView.ViewHolder {
         protected final TextView textView;
@@ -26,9 +52,36 @@ public class PeersRecyclerViewAdapter extends RecyclerView.Adapter<PeersRecycler
         }
     }
 
-    public PeersRecyclerViewAdapter(Context context, List<String> peers) {
+    public PeersRecyclerViewAdapter(Context context) {
         mContext = context;
-        mPeers = peers;
+        mPeers = PeerSnapshot.EMPTY;
+        mPeerItemIds = new HashMap<>();
+        setHasStableIds(true);
+    }
+
+    /**
+     * Applies a change of the peers list. Must be called in the main thread.
+     * Joins and leaves are notified one by one, a change that does not follow the last applied one
+     * (e.g. a coalesced or restored one) rebinds the whole list.
+     */
+    public void applyChange(Change change) {
+        boolean isIncremental = change.previousPeers == mPeers;
+        mPeers = change.peers;
+
+        if (isIncremental) {
+            for (PeerChange peerChange : change.changes) {
+                if (peerChange.type == PeerChange.Type.ADDED) {
+                    notifyItemInserted(peerChange.position);
+                } else {
+                    mPeerItemIds.remove(peerChange.peerId);
+                    notifyItemRemoved(peerChange.position);
+                }
+            }
+        } else {
+            // Forget item IDs of peers who left
+            mPeerItemIds.keySet().retainAll(new HashSet<>(mPeers));
+            notifyDataSetChanged();
+        }
     }
 
     @NonNull
@@ -42,6 +95,17 @@ public class PeersRecyclerViewAdapter extends RecyclerView.Adapter<PeersRecycler
         holder.textView.setText( Character.toString( mPeers.get(position).charAt(0) ) );
     }
 
+    @Override
+    public long getItemId(int position) {
+        String peerId = mPeers.get(position);
+        Long itemId = mPeerItemIds.get(peerId);
+        if (itemId == null) {
+            itemId = mNextItemId++;
+            mPeerItemIds.put(peerId, itemId);
+        }
+        return itemId;
+    }
+
     @Override
     public int getItemCount() {
         return mPeers.size();
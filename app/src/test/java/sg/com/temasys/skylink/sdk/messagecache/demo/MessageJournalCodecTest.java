@@ -0,0 +1,108 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import sg.com.temasys.skylink.sdk.messagecache.demo.model.MessageStore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MessageJournalCodecTest {
+
+    @Test
+    public void encodeThenDecode_roundTrips() {
+        byte[] record = MessageJournal.encode("peer-1", "h\u00e9llo \uD83D\uDC4B", 1234567890123L);
+
+        MessageStore messages = new MessageStore();
+        MessageJournal.decode(ByteBuffer.wrap(record), 0, messages);
+
+        assertEquals(1, messages.size());
+        assertEquals("peer-1", messages.getSenderId(0));
+        assertEquals("h\u00e9llo \uD83D\uDC4B", messages.getData(0));
+        assertEquals(1234567890123L, messages.getTimestamp(0));
+    }
+
+    @Test
+    public void encode_nullSenderAndData_decodeAsEmpty() {
+        MessageStore messages = new MessageStore();
+        MessageJournal.decode(ByteBuffer.wrap(MessageJournal.encode(null, null, 1)), 0, messages);
+
+        assertEquals("", messages.getSenderId(0));
+        assertEquals("", messages.getData(0));
+    }
+
+    @Test
+    public void encode_repeatsLengthAtBothEnds() {
+        byte[] record = MessageJournal.encode("a", "b", 1);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+
+        assertEquals(record.length, buffer.getInt(0));
+        assertEquals(record.length, buffer.getInt(record.length - 4));
+    }
+
+    @Test
+    public void findLastRecords_returnsNewestInFileOrder() {
+        byte[][] records = {
+                MessageJournal.encode("a", "first", 1),
+                MessageJournal.encode("b", "second", 2),
+                MessageJournal.encode("c", "third", 3),
+        };
+        ByteBuffer buffer = journal(records);
+
+        int[] starts = MessageJournal.findLastRecords(buffer, 2);
+
+        assertArrayEquals(new int[]{records[0].length, records[0].length + records[1].length}, starts);
+        MessageStore messages = new MessageStore();
+        for (int start : starts) MessageJournal.decode(buffer, start, messages);
+        assertEquals("second", messages.getData(0));
+        assertEquals("third", messages.getData(1));
+    }
+
+    @Test
+    public void findLastRecords_moreThanAvailable_returnsAll() {
+        ByteBuffer buffer = journal(MessageJournal.encode("a", "first", 1), MessageJournal.encode("b", "second", 2));
+
+        assertEquals(2, MessageJournal.findLastRecords(buffer, 10).length);
+    }
+
+    @Test
+    public void findLastRecords_skipsPartiallyWrittenLastRecord() {
+        byte[] first = MessageJournal.encode("a", "first", 1);
+        byte[] second = MessageJournal.encode("b", "second", 2);
+        byte[] partial = new byte[first.length + second.length - 3];
+        System.arraycopy(first, 0, partial, 0, first.length);
+        System.arraycopy(second, 0, partial, first.length, second.length - 3);
+
+        int[] starts = MessageJournal.findLastRecords(ByteBuffer.wrap(partial), 10);
+
+        assertArrayEquals(new int[]{0}, starts);
+    }
+
+    @Test
+    public void findValidEnd_endsAfterLastCompleteRecord() {
+        byte[] first = MessageJournal.encode("a", "first", 1);
+        byte[] second = MessageJournal.encode("b", "second", 2);
+
+        assertEquals(first.length + second.length, MessageJournal.findValidEnd(journal(first, second)));
+
+        byte[] partial = new byte[first.length + 5];
+        System.arraycopy(first, 0, partial, 0, first.length);
+        assertEquals(first.length, MessageJournal.findValidEnd(ByteBuffer.wrap(partial)));
+    }
+
+    @Test
+    public void findValidEnd_emptyJournal_isZero() {
+        assertEquals(0, MessageJournal.findValidEnd(ByteBuffer.allocate(0)));
+    }
+
+    private static ByteBuffer journal(byte[]... records) {
+        int size = 0;
+        for (byte[] record : records) size += record.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] record : records) buffer.put(record);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,149 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MessageMergerTest {
+
+    @Test
+    public void merge_intoEmptyTimeline_insertsAll() {
+        MessageStore target = new MessageStore();
+        int[] ranges = MessageMerger.merge(target, messages(1, 2, 3));
+
+        assertArrayEquals(new int[]{0, 3}, ranges);
+        assertTimestamps(target, 1, 2, 3);
+    }
+
+    @Test
+    public void merge_newerMessages_areAppended() {
+        MessageStore target = messages(1, 2, 3);
+        int[] ranges = MessageMerger.merge(target, messages(4, 5));
+
+        assertArrayEquals(new int[]{3, 2}, ranges);
+        assertTimestamps(target, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void merge_olderMessages_arePrepended() {
+        MessageStore target = messages(10, 11);
+        int[] ranges = MessageMerger.merge(target, messages(1, 2, 3));
+
+        assertArrayEquals(new int[]{0, 3}, ranges);
+        assertTimestamps(target, 1, 2, 3, 10, 11);
+    }
+
+    @Test
+    public void merge_interleavedMessages_reportsEachInsertedRange() {
+        MessageStore target = messages(1, 3, 5, 7);
+        int[] ranges = MessageMerger.merge(target, messages(2, 6, 8));
+
+        assertArrayEquals(new int[]{1, 1, 4, 1, 6, 1}, ranges);
+        assertTimestamps(target, 1, 2, 3, 5, 6, 7, 8);
+    }
+
+    @Test
+    public void merge_duplicates_areSkipped() {
+        MessageStore target = messages(1, 2, 3);
+        int[] ranges = MessageMerger.merge(target, messages(2, 3));
+
+        assertArrayEquals(new int[0], ranges);
+        assertTimestamps(target, 1, 2, 3);
+    }
+
+    @Test
+    public void merge_sameTimestampDifferentContent_isInserted() {
+        MessageStore target = new MessageStore();
+        target.add("peer", "first", 5);
+        MessageStore incoming = new MessageStore();
+        incoming.add("peer", "first", 5);
+        incoming.add("peer", "second", 5);
+        incoming.add("other", "first", 5);
+
+        int[] ranges = MessageMerger.merge(target, incoming);
+
+        assertArrayEquals(new int[]{1, 2}, ranges);
+        assertEquals(3, target.size());
+        assertEquals("second", target.getData(1));
+        assertEquals("other", target.getSenderId(2));
+    }
+
+    @Test
+    public void merge_unsortedIncoming_isSortedFirst() {
+        MessageStore target = messages(2, 4);
+        int[] ranges = MessageMerger.merge(target, messages(5, 1, 3));
+
+        assertArrayEquals(new int[]{0, 1, 2, 1, 4, 1}, ranges);
+        assertTimestamps(target, 1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void merge_existingMessages_keepTheirIds() {
+        MessageStore target = messages(1, 3, 5);
+        long[] ids = {target.getId(0), target.getId(1), target.getId(2)};
+
+        MessageMerger.merge(target, messages(0, 2, 4, 6));
+
+        assertEquals(ids[0], target.getId(1));
+        assertEquals(ids[1], target.getId(3));
+        assertEquals(ids[2], target.getId(5));
+        for (int i = 1; i < target.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (target.getId(i) == target.getId(j)) throw new AssertionError("Duplicate ID at " + j + " and " + i);
+            }
+        }
+    }
+
+    @Test
+    public void merge_manyOlderPages_keepsOrder() {
+        MessageStore target = new MessageStore();
+        for (int page = 0; page < 100; page++) {
+            long[] timestamps = new long[50];
+            for (int i = 0; i < timestamps.length; i++) timestamps[i] = -page * 100L + i;
+            MessageMerger.merge(target, messages(timestamps));
+        }
+
+        assertEquals(5000, target.size());
+        for (int i = 1; i < target.size(); i++) {
+            if (target.getTimestamp(i - 1) > target.getTimestamp(i)) throw new AssertionError("Unsorted at " + i);
+        }
+    }
+
+    @Test
+    public void sortByTimestamp_sorted_returnsSameStore() {
+        MessageStore messages = messages(1, 2, 2, 3);
+        assertSame(messages, MessageMerger.sortByTimestamp(messages));
+    }
+
+    @Test
+    public void sortByTimestamp_unsorted_isStable() {
+        MessageStore messages = new MessageStore();
+        messages.add("peer", "b", 2);
+        messages.add("peer", "a1", 1);
+        messages.add("peer", "a2", 1);
+
+        MessageStore sorted = MessageMerger.sortByTimestamp(messages);
+
+        assertNotSame(messages, sorted);
+        assertEquals("a1", sorted.getData(0));
+        assertEquals("a2", sorted.getData(1));
+        assertEquals("b", sorted.getData(2));
+    }
+
+    private static MessageStore messages(long... timestamps) {
+        MessageStore messages = new MessageStore();
+        for (long timestamp : timestamps) {
+            messages.add("peer", "message " + timestamp, timestamp);
+        }
+        return messages;
+    }
+
+    private static void assertTimestamps(MessageStore messages, long... timestamps) {
+        long[] actual = new long[messages.size()];
+        for (int i = 0; i < actual.length; i++) actual[i] = messages.getTimestamp(i);
+        assertArrayEquals(timestamps, actual);
+    }
+}
@@ -0,0 +1,104 @@
+package sg.com.temasys.skylink.sdk.messagecache.demo.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MessageStoreTest {
+
+    @Test
+    public void add_readsBackMessages() {
+        MessageStore store = new MessageStore(1);
+        store.add("alice", "hello", 1);
+        store.add("bob", null, 2);
+
+        assertEquals(2, store.size());
+        assertEquals("alice", store.getSenderId(0));
+        assertEquals("hello", store.getData(0));
+        assertEquals(1, store.getTimestamp(0));
+        assertEquals("bob", store.getSenderId(1));
+        assertNull(store.getData(1));
+    }
+
+    @Test
+    public void insertAll_atFrontMiddleAndEnd_keepsOrder() {
+        MessageStore store = messages("c", "d");
+        store.insertAll(0, messages("a", "b"));
+        store.insertAll(4, messages("f"));
+        store.insertAll(4, messages("e"));
+
+        assertData(store, "a", "b", "c", "d", "e", "f");
+    }
+
+    @Test
+    public void insertAll_keepsIdsOfExistingMessages() {
+        MessageStore store = messages("b", "c");
+        long idB = store.getId(0);
+        long idC = store.getId(1);
+
+        store.insertAll(0, messages("a"));
+        store.insertAll(2, messages("bb"));
+
+        assertEquals(idB, store.getId(1));
+        assertEquals(idC, store.getId(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void insertAll_invalidPosition_throws() {
+        messages("a").insertAll(2, messages("b"));
+    }
+
+    @Test
+    public void replaceRange_replacesWithLargerRange() {
+        MessageStore store = messages("a", "b", "c", "d");
+        MessageStore replacement = new MessageStore();
+        replacement.copyFrom(store, 1, store.getId(1));
+        replacement.copyFrom(messages("x"), 0, store.nextId());
+        replacement.copyFrom(store, 2, store.getId(2));
+
+        long idB = store.getId(1);
+        store.replaceRange(1, 3, replacement);
+
+        assertData(store, "a", "b", "x", "c", "d");
+        assertEquals(idB, store.getId(1));
+    }
+
+    @Test
+    public void clear_removesAllMessages() {
+        MessageStore store = messages("a", "b");
+        store.clear();
+        store.add("peer", "c", 0);
+
+        assertData(store, "c");
+        assertEquals("peer", store.getSenderId(0));
+    }
+
+    @Test
+    public void prependingRepeatedly_keepsAllMessages() {
+        MessageStore store = new MessageStore();
+        for (int i = 999; i >= 0; i--) {
+            store.insertAll(0, messages(String.valueOf(i)));
+        }
+
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), store.getData(i));
+        }
+    }
+
+    private static MessageStore messages(String... data) {
+        MessageStore messages = new MessageStore();
+        for (String message : data) {
+            messages.add("peer", message, 0);
+        }
+        return messages;
+    }
+
+    private static void assertData(MessageStore store, String... data) {
+        assertEquals(data.length, store.size());
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], store.getData(i));
+        }
+    }
+}
@@ -7,12 +7,15 @@ import android.util.Log;
 import org.json.JSONArray;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import sg.com.temasys.skylink.sdk.rtc.SkylinkCaptureFormat;
 import sg.com.temasys.skylink.sdk.rtc.SkylinkInfo;
 import sg.com.temasys.skylink.sdk.rtc.SkylinkMedia;
 import sg.com.temasys.skylink.sdk.sampleapp.service.model.PermRequesterInfo;
+import sg.com.temasys.skylink.sdk.sampleapp.service.model.RemotePeerEvent;
 import sg.com.temasys.skylink.sdk.sampleapp.service.model.SkylinkPeer;
 import sg.com.temasys.skylink.sdk.sampleapp.utils.PermissionUtils;
 
@@ -30,6 +33,17 @@ import static sg.com.temasys.skylink.sdk.sampleapp.utils.Utils.toastLogLong;
 
 public abstract class BasePresenter {
 
+    /**
+     * Gets the executor on which this presenter consumes room, remote peer and message events
+     * from the SDK callbacks, see {@link sg.com.temasys.skylink.sdk.sampleapp.service.SkylinkEventBus}.
+     * Events are processed one at a time, in order.
+     *
+     * @return Executor, or null to process events in the SDK callback thread
+     */
+    public Executor getEventExecutor() {
+        return null;
+    }
+
     //----------------------------------------------------------------------------------------------
     // Methods which are from LifeCycleListener need to be implemented for all functions
     //----------------------------------------------------------------------------------------------
@@ -40,6 +54,20 @@ public abstract class BasePresenter {
     public void processRoomDisconnected() {
     }
 
+    /**
+     * Called instead of {@link #processRoomDisconnected()} when disconnected from the room unexpectedly,
+     * e.g. after losing the network.
+     */
+    public void processRoomDisconnectedUnexpectedly(String reason) {
+        processRoomDisconnected();
+    }
+
+    /**
+     * Called when the network becomes available after having been lost.
+     */
+    public void processNetworkAvailable() {
+    }
+
     //----------------------------------------------------------------------------------------------
     // Methods which are from RemotePeerListener need to be implemented for all functions
     //----------------------------------------------------------------------------------------------
@@ -50,6 +78,20 @@ public abstract class BasePresenter {
     public void processRemotePeerDisconnected(SkylinkPeer remotePeer, int removeIndex) {
     }
 
+    /**
+     * Called with the joins and leaves held back during a peer join/leave storm, in order.
+     * By default they are replayed one by one, presenters may override it to update their view once.
+     */
+    public void processRemotePeersChanged(List<RemotePeerEvent> events) {
+        for (RemotePeerEvent event : events) {
+            if (event.isJoin()) {
+                processRemotePeerConnected(event.getPeer());
+            } else {
+                processRemotePeerDisconnected(event.getPeer(), event.getRemoveIndex());
+            }
+        }
+    }
+
     //----------------------------------------------------------------------------------------------
     // Methods which are from MediaListener need to be implemented for audio and video
     //----------------------------------------------------------------------------------------------
@@ -148,6 +190,12 @@ public abstract class BasePresenter {
 
     public void processMessageSendFailed(){
 
+    }
+
+    /**
+     * Called when the outgoing message queue fills up (messages are rejected), and when it accepts messages again.
+     */
+    public void processMessageBackpressureChanged(boolean isFull) {
     }
     //----------------------------------------------------------------------------------------------
     // Methods which are from RecordingListener need to be implemented for recording (in Multi Video function)
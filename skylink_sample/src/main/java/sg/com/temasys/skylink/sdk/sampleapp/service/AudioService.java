@@ -39,7 +39,7 @@ public class AudioService extends SkylinkCommonService implements AudioContract.
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     /**
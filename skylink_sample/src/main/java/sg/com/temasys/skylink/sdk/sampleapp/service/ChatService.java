@@ -33,9 +33,18 @@ public class ChatService extends SkylinkCommonService implements ChatContract.Se
 
     private final int MAX_REMOTE_PEER = 7;
 
+    // coalesces server messages sent in bursts into batches
+    private final ServerMessageOutbox outbox;
+
     public ChatService(Context context) {
         super(context);
         initializeSkylinkConnection(Constants.CONFIG_TYPE.CHAT);
+
+        outbox = new ServerMessageOutbox((remotePeerId, message, callback) -> {
+            if (skylinkConnection == null) return false;
+            skylinkConnection.sendServerMessage(message, remotePeerId, callback);
+            return true;
+        }, isFull -> presenter.processMessageBackpressureChanged(isFull), this::onServerMessagesFailed);
     }
 
     @Override
@@ -45,25 +54,52 @@ public class ChatService extends SkylinkCommonService implements ChatContract.Se
 
     /**
      * Sends a user defined message to a specific remote peer or to all remote peers via a server.
+     * The message goes through the outbox, so messages sent in a burst reach the server in batches.
      *
      * @param remotePeerId Id of the remote peer to whom we will send a message. Use 'null' if the
      *                     message is to be broadcast to all remote peers in the room.
      * @param message      User defined data
+     * @return False if the outbox is full and the message was rejected, to be reported by the caller
      */
-    public void sendServerMessage(String remotePeerId, Object message) {
-        if (skylinkConnection != null) {
+    public boolean sendServerMessage(String remotePeerId, Object message) {
+        return sendServerMessage(remotePeerId, message, null);
+    }
 
-            skylinkConnection.sendServerMessage(message, remotePeerId, new SkylinkCallback() {
-                @Override
-                public void onError(SkylinkError error, HashMap<String, Object> details) {
-                    presenter.processMessageSendFailed();
+    /**
+     * Sends a user defined message to a specific remote peer or to all remote peers via a server,
+     * reporting the outcome of this message.
+     *
+     * @param remotePeerId Id of the remote peer to whom we will send a message. Use 'null' if the
+     *                     message is to be broadcast to all remote peers in the room.
+     * @param message      User defined data
+     * @param callback     Notified when the message is dispatched or fails, can be null
+     * @return False if the outbox is full and the message was rejected, to be reported by the caller
+     *         (the callback is not notified)
+     */
+    public boolean sendServerMessage(String remotePeerId, Object message, ServerMessageOutbox.SendCallback callback) {
+        if (skylinkConnection == null) return false;
+
+        return outbox.enqueue(remotePeerId, message, new ServerMessageOutbox.SendCallback() {
+            @Override
+            public void onDispatched(int batchSize) {
+                if (callback != null) callback.onDispatched(batchSize);
+            }
+
+            @Override
+            public void onFailed(String reason) {
+                if (callback != null) callback.onFailed(reason);
+            }
+        });
+    }
 
-                    String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
-                    Log.e("SkylinkCallback", contextDescription);
-                    toastLog(TAG, context, "\"Unable to sendServerMessage as " + contextDescription);
-                }
-            });
-        }
+    /**
+     * Reports a batch of server messages that could not be sent, once for the whole batch.
+     */
+    private void onServerMessagesFailed(int messageCount, String reason) {
+        presenter.processMessageSendFailed();
+
+        Log.e("SkylinkCallback", String.valueOf(reason));
+        toastLog(TAG, context, "\"Unable to sendServerMessage (" + messageCount + " message(s)) as " + reason);
     }
 
     /**
@@ -132,10 +168,11 @@ public class ChatService extends SkylinkCommonService implements ChatContract.Se
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     public void disposeLocalMedia() {
+        outbox.clear();
         clearInstance();
     }
 
@@ -146,8 +183,6 @@ public class ChatService extends SkylinkCommonService implements ChatContract.Se
 
     public void getStoredMessages() {
 
-        final JSONArray[] messages = {new JSONArray()};
-
         if (skylinkConnection != null) {
             skylinkConnection.getStoredMessages(new SkylinkCallback.StoredMessages() {
                 @Override
@@ -157,8 +192,8 @@ public class ChatService extends SkylinkCommonService implements ChatContract.Se
                         presenter.processStoredMessagesResult(null);
                     } else {
                         if (storedMessages != null) {
-                            messages[0] = storedMessages;
-                            Log.d(TAG, "result returned from stored msg history: " + storedMessages.toString());
+                            // Only log the size, stringifying the whole history would copy it once more
+                            Log.d(TAG, "result returned from stored msg history: " + storedMessages.length() + " messages");
 
                             presenter.processStoredMessagesResult(storedMessages);
                         }
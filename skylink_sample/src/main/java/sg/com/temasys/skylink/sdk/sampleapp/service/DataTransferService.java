@@ -101,7 +101,7 @@ public class DataTransferService extends SkylinkCommonService implements DataTra
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     public void disposeLocalMedia() {
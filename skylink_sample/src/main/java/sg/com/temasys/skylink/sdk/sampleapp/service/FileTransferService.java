@@ -139,7 +139,7 @@ public class FileTransferService extends SkylinkCommonService implements FileTra
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     public void disposeLocalMedia() {
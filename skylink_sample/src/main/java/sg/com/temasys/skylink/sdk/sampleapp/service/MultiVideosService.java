@@ -279,7 +279,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
         if (skylinkConnection != null) {
             if (peerIndex != -1 && mediaId != null) {
                 // get sent video res to remote peer
-                String remotePeerId = mPeersList.get(peerIndex).getPeerId();
+                String remotePeerId = peerRegistry.getSnapshot().get(peerIndex).getPeerId();
                 skylinkConnection.getSentVideoResolution(remotePeerId, mediaId,
                         new SkylinkCallback.SentVideoResolution() {
                             @Override
@@ -309,7 +309,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      */
     public void getReceivedVideoResolution(int peerIndex, SkylinkMedia.MediaType mediaType) {
         // we also can get media id from remote peer id
-        String remotePeerId = mPeersList.get(peerIndex).getPeerId();
+        String remotePeerId = peerRegistry.getSnapshot().get(peerIndex).getPeerId();
 
         List<SkylinkMedia> remoteSkylinkMediaList = skylinkConnection.getSkylinkMediaList(mediaType, remotePeerId);
 
@@ -348,13 +348,14 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * @param peerIndex Index of the remote Peer in frame for which we are getting transfer speed on.
      */
     public void getWebrtcStats(int peerIndex) {
-        String peerId = mPeersList.get(peerIndex).getPeerId();
+        PeerRegistry.Snapshot peers = peerRegistry.getSnapshot();
+        String peerId = peers.get(peerIndex).getPeerId();
 
         if (peerId == null)
             return;
 
         // get sending stats from local media to remote peer
-        Map<String, SkylinkMedia> localMediaMap = mPeersList.get(0).getMediaMap();
+        Map<String, SkylinkMedia> localMediaMap = peers.getSelfPeer().getMediaMap();
         if (localMediaMap != null && localMediaMap.size() > 0) {
             for (String mediaId : localMediaMap.keySet()) {
                 skylinkConnection.getSentWebRtcStats(mediaId, peerId,
@@ -375,7 +376,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
         }
 
         // get receiving web rtc stats from remote media of remote peer
-        Map<String, SkylinkMedia> mediaMap = mPeersList.get(peerIndex).getMediaMap();
+        Map<String, SkylinkMedia> mediaMap = peers.get(peerIndex).getMediaMap();
         if (mediaMap == null || mediaMap.size() == 0)
             return;
 
@@ -407,58 +408,50 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * @param forSending The flag to distinguish getting from sending/uploading or from receiving/downloading
      */
     public void getTransferSpeeds(int peerIndex, SkylinkMedia.MediaType mediaType, boolean forSending) {
-        String peerId = mPeersList.get(peerIndex).getPeerId();
-        String peerName = mPeersList.get(peerIndex).getPeerName() + "(" + peerId + ")";
+        PeerRegistry.Snapshot peers = peerRegistry.getSnapshot();
+        String peerId = peers.get(peerIndex).getPeerId();
+        String peerName = peers.get(peerIndex).getPeerName() + "(" + peerId + ")";
 
         if (peerId == null)
             return;
 
-        // get sending stats from local media to remote peer
+        // get sending stats from local media of the type to remote peer
         if (forSending) {
-            Map<String, SkylinkMedia> localMediaMap = mPeersList.get(0).getMediaMap();
-            if (localMediaMap != null && localMediaMap.size() > 0) {
-                for (String mediaId : localMediaMap.keySet()) {
-                    if (localMediaMap.get(mediaId).getMediaType() == mediaType) {
-                        skylinkConnection.getSentTransferSpeed(mediaId, peerId,
-                                new SkylinkCallback.TransferSpeed() {
-                                    @Override
-                                    public void onError(SkylinkError error, HashMap<String, Object> details) {
-                                        String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
-                                        Log.e("SkylinkCallback", contextDescription);
-                                        toastLog(TAG, context, "\"Unable to getSentTransferSpeed for sending as " + contextDescription);
-                                    }
-
-                                    @Override
-                                    public void onReceiveTransferSpeed(double transferSpeed) {
-                                        presenter.processTransferSpeedReceived(transferSpeed, peerName, true, context);
-                                    }
-                                });
-                    }
-                }
+            List<SkylinkMedia> localMediaList = peers.getSelfPeer().getMediaList(mediaType);
+            for (int i = 0; i < localMediaList.size(); i++) {
+                skylinkConnection.getSentTransferSpeed(localMediaList.get(i).getMediaId(), peerId,
+                        new SkylinkCallback.TransferSpeed() {
+                            @Override
+                            public void onError(SkylinkError error, HashMap<String, Object> details) {
+                                String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
+                                Log.e("SkylinkCallback", contextDescription);
+                                toastLog(TAG, context, "\"Unable to getSentTransferSpeed for sending as " + contextDescription);
+                            }
+
+                            @Override
+                            public void onReceiveTransferSpeed(double transferSpeed) {
+                                presenter.processTransferSpeedReceived(transferSpeed, peerName, true, context);
+                            }
+                        });
             }
         } else {
-            Map<String, SkylinkMedia> mediaMap = mPeersList.get(peerIndex).getMediaMap();
-            if (mediaMap == null || mediaMap.size() == 0)
-                return;
-            if (mediaMap != null && mediaMap.size() > 0) {
-                for (String mediaId : mediaMap.keySet()) {
-                    if (mediaMap.get(mediaId).getMediaType() == mediaType) {
-                        skylinkConnection.getReceivedTransferSpeed(mediaId,
-                                new SkylinkCallback.TransferSpeed() {
-                                    @Override
-                                    public void onError(SkylinkError error, HashMap<String, Object> details) {
-                                        String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
-                                        Log.e("SkylinkCallback", contextDescription);
-                                        toastLog(TAG, context, "\"Unable to getReceivedTransferSpeed for receiving as " + contextDescription);
-                                    }
-
-                                    @Override
-                                    public void onReceiveTransferSpeed(double transferSpeed) {
-                                        presenter.processTransferSpeedReceived(transferSpeed, peerName, false, context);
-                                    }
-                                });
-                    }
-                }
+            // get receiving stats from remote media of the type of remote peer
+            List<SkylinkMedia> mediaList = peers.get(peerIndex).getMediaList(mediaType);
+            for (int i = 0; i < mediaList.size(); i++) {
+                skylinkConnection.getReceivedTransferSpeed(mediaList.get(i).getMediaId(),
+                        new SkylinkCallback.TransferSpeed() {
+                            @Override
+                            public void onError(SkylinkError error, HashMap<String, Object> details) {
+                                String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
+                                Log.e("SkylinkCallback", contextDescription);
+                                toastLog(TAG, context, "\"Unable to getReceivedTransferSpeed for receiving as " + contextDescription);
+                            }
+
+                            @Override
+                            public void onReceiveTransferSpeed(double transferSpeed) {
+                                presenter.processTransferSpeedReceived(transferSpeed, peerName, false, context);
+                            }
+                        });
             }
         }
     }
@@ -494,7 +487,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
             });
 
         } else {
-            SkylinkPeer peer = mPeersList.get(peerIndex);
+            SkylinkPeer peer = peerRegistry.getSnapshot().get(peerIndex);
 
             skylinkConnection.refreshConnection(peer.getPeerId(), iceRestart, new SkylinkCallback() {
                 @Override
@@ -557,8 +550,9 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
         if (peerIndex == -1) {
             mediaList = skylinkConnection.getSkylinkMediaList(SkylinkMedia.MediaType.VIDEO, null);
         } else {
-            if (peerIndex < mPeersList.size()) {
-                SkylinkPeer skylinkPeer = mPeersList.get(peerIndex);
+            PeerRegistry.Snapshot peers = peerRegistry.getSnapshot();
+            if (peerIndex < peers.size()) {
+                SkylinkPeer skylinkPeer = peers.get(peerIndex);
                 mediaList = skylinkConnection.getSkylinkMediaList(SkylinkMedia.MediaType.VIDEO, skylinkPeer.getPeerId());
             }
         }
@@ -585,10 +579,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * @return number of peer(s) or 0 if nothing in room.
      */
     public int getTotalInRoom() {
-        if (mPeersList != null)
-            return mPeersList.size();
-
-        return 0;
+        return peerRegistry.size();
     }
 
     /**
@@ -612,15 +603,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * @return index in frame of the peer
      */
     public int getPeerIndexByPeerId(String peerId) {
-        for (int i = 0; i < mPeersList.size(); i++) {
-            SkylinkPeer peer = mPeersList.get(i);
-
-            if (peer.getPeerId().equals(peerId)) {
-                return i;
-            }
-        }
-
-        return -1;
+        return peerRegistry.getSnapshot().indexOf(peerId);
     }
 
     /**
@@ -632,8 +615,9 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * @return id of peer
      */
     public String getPeerIdByIndex(int peerIndex) {
-        if (skylinkConnection != null && peerIndex < mPeersList.size()) {
-            return mPeersList.get(peerIndex).getPeerId();
+        PeerRegistry.Snapshot peers = peerRegistry.getSnapshot();
+        if (skylinkConnection != null && peerIndex < peers.size()) {
+            return peers.get(peerIndex).getPeerId();
         }
 
         return null;
@@ -643,7 +627,7 @@ public class MultiVideosService extends SkylinkCommonService implements MultiVid
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     public void disposeLocalMedia() {
@@ -0,0 +1,156 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sg.com.temasys.skylink.sdk.sampleapp.service.model.RemotePeerEvent;
+
+/**
+ * Damps remote peer join/leave storms, e.g. when a whole class joins a large room at once.
+ * While the join and leave rate is low, each join or leave is handled right away with its per-peer side effects
+ * (toast, presenter update). Once STORM_ENTER_EVENTS joins and leaves happen within RATE_WINDOW_MS, the room is
+ * in a storm: joins and leaves are held back and delivered every FLUSH_INTERVAL_MS as one aggregate update
+ * (e.g. "+47 peers"), without per-peer side effects. The storm ends once fewer than STORM_EXIT_EVENTS joins and
+ * leaves happen within RATE_WINDOW_MS.
+ * Can be used from any thread, like the SDK callbacks. Aggregate updates are delivered in the main thread.
+ */
+public class PeerEventDamper {
+
+    private static final String TAG = PeerEventDamper.class.getName();
+
+    private static final long RATE_WINDOW_MS = 1000;
+    private static final int STORM_ENTER_EVENTS = 10;
+    private static final int STORM_EXIT_EVENTS = 3;
+    private static final long FLUSH_INTERVAL_MS = 500;
+
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    // State below is guarded by this
+    // Times of the latest joins and leaves, as a ring
+    private final long[] eventTimes = new long[STORM_ENTER_EVENTS];
+    private int eventCount;
+
+    private boolean isStorm;
+    private List<RemotePeerEvent> heldEvents = new ArrayList<>();
+    private int heldJoinCount;
+    private int heldLeaveCount;
+
+    // Statistics
+    private int stormCount;
+    private long heldEventCount;
+
+    public interface Listener {
+        /**
+         * Called with the joins and leaves held back since the previous call, in order.
+         *
+         * @param joinCount  Number of joins among the events
+         * @param leaveCount Number of leaves among the events
+         * @param isStormOver True if this is the last update of the storm
+         */
+        void onAggregatedPeerEvents(List<RemotePeerEvent> events, int joinCount, int leaveCount, boolean isStormOver);
+    }
+
+    public PeerEventDamper(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a join or leave, holding it back if the room is in a storm.
+     *
+     * @return True if the event is held back, to be delivered with the next aggregate update,
+     * false if it should be handled right away
+     */
+    public synchronized boolean hold(RemotePeerEvent event) {
+        long now = SystemClock.elapsedRealtime();
+        eventTimes[eventCount % STORM_ENTER_EVENTS] = now;
+        eventCount++;
+
+        if (!isStorm) {
+            if (countEventsSince(now - RATE_WINDOW_MS) < STORM_ENTER_EVENTS) return false;
+
+            isStorm = true;
+            stormCount++;
+            Log.d(TAG, "Peer join/leave storm, aggregating peer updates");
+            mainHandler.postDelayed(flush, FLUSH_INTERVAL_MS);
+        }
+
+        heldEvents.add(event);
+        heldEventCount++;
+        if (event.isJoin()) {
+            heldJoinCount++;
+        } else {
+            heldLeaveCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Is the room in a join/leave storm? Per-peer side effects should then be skipped.
+     */
+    public synchronized boolean isStorm() {
+        return isStorm;
+    }
+
+    /**
+     * Drops the held events and ends the storm, e.g. when leaving the room.
+     */
+    public synchronized void clear() {
+        mainHandler.removeCallbacks(flush);
+        isStorm = false;
+        eventCount = 0;
+        heldEvents = new ArrayList<>();
+        heldJoinCount = 0;
+        heldLeaveCount = 0;
+    }
+
+    public synchronized String getStats() {
+        return "storms: " + stormCount + ", held peer events: " + heldEventCount;
+    }
+
+    private synchronized void flush() {
+        // Cleared meanwhile
+        if (!isStorm) return;
+
+        boolean isStormOver = countEventsSince(SystemClock.elapsedRealtime() - RATE_WINDOW_MS) < STORM_EXIT_EVENTS;
+
+        List<RemotePeerEvent> events = heldEvents;
+        int joinCount = heldJoinCount;
+        int leaveCount = heldLeaveCount;
+        heldEvents = new ArrayList<>();
+        heldJoinCount = 0;
+        heldLeaveCount = 0;
+
+        if (isStormOver) {
+            isStorm = false;
+            Log.d(TAG, "Peer join/leave storm over. " + getStats());
+        } else {
+            mainHandler.postDelayed(flush, FLUSH_INTERVAL_MS);
+        }
+
+        // Delivered while holding the lock, so that a join or leave handled right away after the storm
+        // cannot overtake the held ones
+        if (!events.isEmpty() || isStormOver) {
+            listener.onAggregatedPeerEvents(events, joinCount, leaveCount, isStormOver);
+        }
+    }
+
+    /**
+     * Counts the recorded joins and leaves since the given time, up to STORM_ENTER_EVENTS.
+     */
+    private int countEventsSince(long time) {
+        int count = 0;
+        int recorded = Math.min(eventCount, STORM_ENTER_EVENTS);
+        for (int i = 1; i <= recorded; i++) {
+            if (eventTimes[(eventCount - i) % STORM_ENTER_EVENTS] < time) break;
+            count++;
+        }
+        return count;
+    }
+}
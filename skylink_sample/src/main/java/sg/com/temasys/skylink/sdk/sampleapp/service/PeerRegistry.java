@@ -0,0 +1,166 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sg.com.temasys.skylink.sdk.sampleapp.service.model.SkylinkPeer;
+
+/**
+ * Peers joined in the room, the self peer first, then remote peers in join order.
+ * Peers are looked up by id in constant time.
+ * Index-based UIs read an immutable {@link Snapshot} of the ordered peers: each change publishes a new snapshot
+ * (copy-on-write), so readers never lock, never block the SDK thread changing the peers,
+ * and never see a snapshot change while they read it.
+ * Changes are serialized, they are expected from the SDK callbacks.
+ */
+public class PeerRegistry {
+
+    private final Map<String, SkylinkPeer> peersById = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Immutable ordered view of the peers at some point in time.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new SkylinkPeer[0]);
+
+        private final SkylinkPeer[] peers;
+        private volatile Map<String, Integer> indexById; // Built on first use
+
+        private Snapshot(SkylinkPeer[] peers) {
+            this.peers = peers;
+        }
+
+        public int size() {
+            return peers.length;
+        }
+
+        /**
+         * @throws IndexOutOfBoundsException if there is no peer at the index
+         */
+        public SkylinkPeer get(int index) {
+            if (index < 0 || index >= peers.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + peers.length);
+            }
+            return peers[index];
+        }
+
+        /**
+         * @return Self peer, or null if not connected to a room
+         */
+        public SkylinkPeer getSelfPeer() {
+            return peers.length > 0 ? peers[0] : null;
+        }
+
+        /**
+         * @return Index of the peer, or -1 if the peer is not in this snapshot
+         */
+        public int indexOf(String peerId) {
+            Map<String, Integer> index = indexById;
+            if (index == null) {
+                // Racing readers may build it twice, which is harmless
+                index = new HashMap<>(peers.length * 2);
+                for (int i = 0; i < peers.length; i++) {
+                    index.put(peers[i].getPeerId(), i);
+                }
+                indexById = index;
+            }
+            Integer peerIndex = index.get(peerId);
+            return peerIndex != null ? peerIndex : -1;
+        }
+
+        public List<SkylinkPeer> asList() {
+            return Collections.unmodifiableList(Arrays.asList(peers));
+        }
+    }
+
+    /**
+     * Gets the peer with the given id.
+     *
+     * @return Peer, or null if no such peer is in the room
+     */
+    public SkylinkPeer get(String peerId) {
+        return peerId != null ? peersById.get(peerId) : null;
+    }
+
+    /**
+     * Gets the current ordered peers, which are not affected by later changes.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Replaces all peers with the self peer, e.g. when connected to a room.
+     */
+    public void reset(SkylinkPeer selfPeer) {
+        synchronized (writeLock) {
+            peersById.clear();
+            peersById.put(selfPeer.getPeerId(), selfPeer);
+            snapshot = new Snapshot(new SkylinkPeer[]{selfPeer});
+        }
+    }
+
+    /**
+     * Adds a peer after the peers already in the room.
+     * A peer with the same id is replaced in place.
+     */
+    public void add(SkylinkPeer peer) {
+        synchronized (writeLock) {
+            SkylinkPeer[] peers = snapshot.peers;
+            SkylinkPeer previousPeer = peersById.put(peer.getPeerId(), peer);
+            SkylinkPeer[] newPeers;
+            if (previousPeer != null) {
+                newPeers = peers.clone();
+                newPeers[indexOf(peers, previousPeer)] = peer;
+            } else {
+                newPeers = Arrays.copyOf(peers, peers.length + 1);
+                newPeers[peers.length] = peer;
+            }
+            snapshot = new Snapshot(newPeers);
+        }
+    }
+
+    /**
+     * Removes a peer, the peers after it move up by one.
+     *
+     * @return Index of the removed peer, or -1 if no such peer is in the room
+     */
+    public int remove(String peerId) {
+        synchronized (writeLock) {
+            SkylinkPeer removedPeer = peerId != null ? peersById.remove(peerId) : null;
+            if (removedPeer == null) return -1;
+
+            SkylinkPeer[] peers = snapshot.peers;
+            int index = indexOf(peers, removedPeer);
+            SkylinkPeer[] newPeers = new SkylinkPeer[peers.length - 1];
+            System.arraycopy(peers, 0, newPeers, 0, index);
+            System.arraycopy(peers, index + 1, newPeers, index, peers.length - index - 1);
+            snapshot = new Snapshot(newPeers);
+            return index;
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            peersById.clear();
+            snapshot = Snapshot.EMPTY;
+        }
+    }
+
+    private static int indexOf(SkylinkPeer[] peers, SkylinkPeer peer) {
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i] == peer) return i;
+        }
+        throw new IllegalStateException("Peer " + peer.getPeerId() + " indexed but not ordered");
+    }
+}
@@ -0,0 +1,294 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import sg.com.temasys.skylink.sdk.rtc.SkylinkCallback;
+import sg.com.temasys.skylink.sdk.rtc.SkylinkError;
+import sg.com.temasys.skylink.sdk.rtc.SkylinkEvent;
+
+/**
+ * Outbox in front of SkylinkConnection.sendServerMessage.
+ * Messages queued within a short window for the same target are sent together as one batch,
+ * i.e. one JSONObject server message {"type": BATCH_TYPE, "messages": [message, ...]} that receivers
+ * unpack with {@link #unpack(Object)}. Only such a JSONObject is a batch, a String message is never
+ * reinterpreted, whatever its content.
+ * A message queued alone is sent as is, so that receivers without batch support still read it.
+ * The queue is bounded: messages are rejected while it is full, and the {@link BackpressureListener}
+ * is told when it fills up and when it has drained again.
+ * The {@link FailureListener} is told once per failed batch, each message's callback once per message.
+ * Messages can be queued from any thread, they are sent in the main thread.
+ */
+public class ServerMessageOutbox {
+
+    private static final String TAG = ServerMessageOutbox.class.getName();
+
+    private static final String TYPE_KEY = "type";
+    private static final String BATCH_TYPE = "sg.com.temasys.skylink.sdk.sampleapp.ServerMessageBatch";
+    private static final String MESSAGES_KEY = "messages";
+
+    // Messages queued within this window are sent in one batch
+    private static final long BATCH_WINDOW_MS = 20;
+    private static final int MAX_BATCH_MESSAGES = 16;
+    private static final int MAX_BATCH_CHARS = 4000;
+
+    private static final int MAX_QUEUED_MESSAGES = 200;
+    // The backpressure is released once the queue has drained down to this size
+    private static final int LOW_WATER_MARK = MAX_QUEUED_MESSAGES / 4;
+
+    private final Sender sender;
+    private final BackpressureListener backpressureListener;
+    private final FailureListener failureListener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+
+    private final ArrayDeque<OutgoingMessage> queue = new ArrayDeque<>();
+    private boolean isFlushScheduled;
+    private boolean isFull;
+
+    // Statistics
+    private long sentMessageCount;
+    private long sentBatchCount;
+    private long rejectedMessageCount;
+
+    /**
+     * Sends a server message with the SDK.
+     */
+    public interface Sender {
+        /**
+         * @return False if the message could not be handed to the SDK, e.g. not connected
+         */
+        boolean send(String remotePeerId, Object message, SkylinkCallback callback);
+    }
+
+    public interface SendCallback {
+        /**
+         * Called in the main thread when the message has been handed to the SDK as part of a batch.
+         * The SDK only reports failures, so {@link #onFailed(String)} may still follow.
+         */
+        void onDispatched(int batchSize);
+
+        /**
+         * Called when the message could not be sent, together with the rest of its batch.
+         */
+        void onFailed(String reason);
+    }
+
+    public interface BackpressureListener {
+        /**
+         * Called in the main thread when the outbox fills up (messages are rejected)
+         * and when it has drained enough to accept messages again.
+         */
+        void onBackpressureChanged(boolean isFull);
+    }
+
+    public interface FailureListener {
+        /**
+         * Called in the main thread once for each batch (or single message) that could not be sent.
+         */
+        void onSendFailed(int messageCount, String reason);
+    }
+
+    private static class OutgoingMessage {
+        private final String remotePeerId;
+        private final Object message;
+        private final int length;
+        private final SendCallback callback;
+
+        private OutgoingMessage(String remotePeerId, Object message, SendCallback callback) {
+            this.remotePeerId = remotePeerId;
+            this.message = message;
+            this.length = String.valueOf(message).length();
+            this.callback = callback;
+        }
+    }
+
+    public ServerMessageOutbox(Sender sender, BackpressureListener backpressureListener,
+                               FailureListener failureListener) {
+        this.sender = sender;
+        this.backpressureListener = backpressureListener;
+        this.failureListener = failureListener;
+    }
+
+    /**
+     * Queues a message to be sent within the batching window.
+     *
+     * @param remotePeerId Id of the remote peer, or null to broadcast to all remote peers in the room
+     * @param message      User defined data
+     * @param callback     Notified of the outcome, can be null
+     * @return False if the outbox is full and the message was rejected
+     */
+    public boolean enqueue(String remotePeerId, Object message, SendCallback callback) {
+        synchronized (queue) {
+            if (queue.size() >= MAX_QUEUED_MESSAGES) {
+                rejectedMessageCount++;
+                if (!isFull) {
+                    isFull = true;
+                    Log.w(TAG, "Outbox full, rejecting messages. " + getStats());
+                    mainHandler.post(() -> backpressureListener.onBackpressureChanged(true));
+                }
+                return false;
+            }
+
+            queue.add(new OutgoingMessage(remotePeerId, message, callback));
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                mainHandler.postDelayed(flush, BATCH_WINDOW_MS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the queued messages, failing them, e.g. when disconnecting.
+     */
+    public void clear() {
+        List<OutgoingMessage> dropped;
+        synchronized (queue) {
+            dropped = new ArrayList<>(queue);
+            queue.clear();
+            mainHandler.removeCallbacks(flush);
+            isFlushScheduled = false;
+        }
+        mainHandler.post(() -> {
+            fail(dropped, "Outbox cleared");
+            updateBackpressure();
+        });
+    }
+
+    public String getStats() {
+        synchronized (queue) {
+            return "sent messages: " + sentMessageCount + ", batches: " + sentBatchCount
+                    + ", rejected: " + rejectedMessageCount + ", queued: " + queue.size();
+        }
+    }
+
+    /**
+     * Unpacks a received server message into the messages it carries.
+     *
+     * @param message Received message
+     * @return Batched messages, or null if the message is not a batch, e.g. any String message
+     */
+    public static List<Object> unpack(Object message) {
+        if (!(message instanceof JSONObject)) return null;
+
+        JSONObject batch = (JSONObject) message;
+        if (!BATCH_TYPE.equals(batch.optString(TYPE_KEY))) return null;
+
+        try {
+            JSONArray messages = batch.optJSONArray(MESSAGES_KEY);
+            if (messages == null) return null;
+
+            List<Object> unpacked = new ArrayList<>(messages.length());
+            for (int i = 0; i < messages.length(); i++) {
+                unpacked.add(messages.get(i));
+            }
+            return unpacked;
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void flush() {
+        List<List<OutgoingMessage>> batches = new ArrayList<>();
+        synchronized (queue) {
+            isFlushScheduled = false;
+            while (!queue.isEmpty()) {
+                batches.add(pollBatch());
+            }
+        }
+
+        for (List<OutgoingMessage> batch : batches) {
+            send(batch);
+        }
+        updateBackpressure();
+    }
+
+    /**
+     * Takes the next messages for the same target, within the batch limits.
+     */
+    private List<OutgoingMessage> pollBatch() {
+        List<OutgoingMessage> batch = new ArrayList<>();
+        OutgoingMessage first = queue.poll();
+        batch.add(first);
+        int chars = first.length;
+
+        OutgoingMessage next;
+        while (batch.size() < MAX_BATCH_MESSAGES && (next = queue.peek()) != null
+                && TextUtils.equals(next.remotePeerId, first.remotePeerId)
+                && chars + next.length <= MAX_BATCH_CHARS) {
+            batch.add(queue.poll());
+            chars += next.length;
+        }
+        return batch;
+    }
+
+    private void send(List<OutgoingMessage> batch) {
+        Object payload;
+        if (batch.size() == 1) {
+            payload = batch.get(0).message;
+        } else {
+            JSONArray messages = new JSONArray();
+            for (OutgoingMessage outgoing : batch) {
+                messages.put(outgoing.message);
+            }
+            JSONObject envelope = new JSONObject();
+            try {
+                envelope.put(TYPE_KEY, BATCH_TYPE);
+                envelope.put(MESSAGES_KEY, messages);
+            } catch (JSONException e) {
+                fail(batch, e.getMessage());
+                return;
+            }
+            payload = envelope;
+        }
+
+        boolean isSent = sender.send(batch.get(0).remotePeerId, payload, new SkylinkCallback() {
+            @Override
+            public void onError(SkylinkError error, HashMap<String, Object> details) {
+                String contextDescription = (String) details.get(SkylinkEvent.CONTEXT_DESCRIPTION);
+                mainHandler.post(() -> fail(batch, contextDescription));
+            }
+        });
+        if (!isSent) {
+            fail(batch, "Not connected");
+            return;
+        }
+
+        synchronized (queue) {
+            sentMessageCount += batch.size();
+            sentBatchCount++;
+        }
+        for (OutgoingMessage outgoing : batch) {
+            if (outgoing.callback != null) outgoing.callback.onDispatched(batch.size());
+        }
+    }
+
+    private void fail(List<OutgoingMessage> messages, String reason) {
+        if (!messages.isEmpty()) failureListener.onSendFailed(messages.size(), reason);
+        for (OutgoingMessage outgoing : messages) {
+            if (outgoing.callback != null) outgoing.callback.onFailed(reason);
+        }
+    }
+
+    private void updateBackpressure() {
+        synchronized (queue) {
+            if (!isFull || queue.size() > LOW_WATER_MARK) return;
+            isFull = false;
+        }
+        Log.d(TAG, "Outbox drained, accepting messages again. " + getStats());
+        backpressureListener.onBackpressureChanged(false);
+    }
+}
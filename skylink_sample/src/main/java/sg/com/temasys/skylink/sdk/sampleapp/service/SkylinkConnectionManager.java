@@ -31,7 +31,7 @@ import static sg.com.temasys.skylink.sdk.sampleapp.utils.Utils.toastLog;
 
 public class SkylinkConnectionManager {
 
-    private final String TAG = SkylinkConnectionManager.class.getName();
+    private static final String TAG = SkylinkConnectionManager.class.getName();
 
     private Context context;
 
@@ -39,6 +39,16 @@ public class SkylinkConnectionManager {
 
     private SkylinkCommonService skylinkCommonService = null;
 
+    // Connection details prepared ahead of connecting, e.g. while still disconnecting from the previous room
+    private static final long PREPARED_CONNECTION_MAX_AGE_MS = 60 * 1000;
+    private String preparedRoomName = null;
+    private String preparedUserName = null;
+    private SkylinkConfig.SkylinkRoomSize preparedRoomSize = null;
+    private long preparedTime = 0;
+
+    // Signed connection strings, cached process-wide until shortly before they expire
+    private final SkylinkConnectionStringProvider connectionStringProvider = SkylinkConnectionStringProvider.getInstance();
+
     /**
      * Both {@link SkylinkCommonService} and {@link Context} are required for {@link SkylinkConnectionManager} functioning.
      *
@@ -137,17 +147,22 @@ public class SkylinkConnectionManager {
             skylinkConnection = initializeSkylinkConnection(typeCall);
         }
 
-        // Get user name in setting
-        String mUserName = Utils.getUserNameByType(typeCall);
-
-        SkylinkConfig skylinkConfig = skylinkCommonService.getSkylinkConfig();
+        // Use the connection details prepared for this room, if any
+        // The connection string is signed below, so it is not prefetched
+        if (!isPrepared(roomName) || preparedRoomSize == null) {
+            prepareConnectionDetails(typeCall, roomName);
+        }
+        String mUserName = preparedUserName;
+        SkylinkConfig.SkylinkRoomSize skylinkRoomSize = preparedRoomSize;
+        clearPrepared();
 
         // Create the Skylink connection string.
         // In production, the connection string should be generated by an external entity
         // (such as a secure App server that has the Skylink App Key secret), and sent to the App.
         // This is to avoid keeping the App Key secret within the application, for better security.
-        String skylinkConnectionString = getSkylinkConnectionString(
-                roomName, new Date(), SkylinkConnection.DEFAULT_DURATION, skylinkConfig.getSkylinkRoomSize());
+        // Signed connection strings are cached, so reconnecting does not sign again.
+        String skylinkConnectionString = connectionStringProvider.getConnectionString(
+                roomName, SkylinkConnection.DEFAULT_DURATION, skylinkRoomSize);
 
         // The skylinkConnectionString should not be logged in production,
         // as it contains potentially sensitive information like the Skylink App Key ID.
@@ -197,8 +212,9 @@ public class SkylinkConnectionManager {
             skylinkConnection = initializeSkylinkConnection(typeCall);
         }
 
-        // Get user name in setting
-        String mUserName = Utils.getUserNameByType(typeCall);
+        // Get user name in setting, unless prepared for this room
+        String mUserName = isPrepared(roomName) ? preparedUserName : Utils.getUserNameByType(typeCall);
+        clearPrepared();
 
         // The skylinkConnectionString should not be logged in production,
         // as it contains potentially sensitive information like the Skylink App Key ID.
@@ -221,6 +237,59 @@ public class SkylinkConnectionManager {
         return skylinkConnection;
     }
 
+    /**
+     * Prepares the details needed by {@link #connectToRoomByConnectionString(Constants.CONFIG_TYPE, String)}
+     * (user name, room size config and signed connection string), so that connecting to the room does not compute them.
+     * The connection string is signed in the background.
+     * Can be called while still disconnecting from the previous room.
+     *
+     * @param typeCall Specify which is current demo/call like audio/video/file/...
+     * @param roomName Name of the room to be connected next
+     */
+    public void prepareConnectToRoomByConnectionString(Constants.CONFIG_TYPE typeCall, String roomName) {
+        prepareConnectionDetails(typeCall, roomName);
+        connectionStringProvider.prefetch(roomName, SkylinkConnection.DEFAULT_DURATION, preparedRoomSize);
+    }
+
+    /**
+     * Prepares the user name and room size config for connecting by connection string.
+     */
+    private void prepareConnectionDetails(Constants.CONFIG_TYPE typeCall, String roomName) {
+        // Get user name in setting
+        preparedUserName = Utils.getUserNameByType(typeCall);
+
+        SkylinkConfig skylinkConfig = skylinkCommonService.getSkylinkConfig();
+        preparedRoomSize = skylinkConfig.getSkylinkRoomSize();
+
+        preparedRoomName = roomName;
+        preparedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Prepares the details needed by {@link #connectToRoomByAppKey(Constants.CONFIG_TYPE, String)} (user name).
+     * Can be called while still disconnecting from the previous room.
+     *
+     * @param typeCall Specify which is current demo/call like audio/video/file/...
+     * @param roomName Name of the room to be connected next
+     */
+    public void prepareConnectToRoomByAppKey(Constants.CONFIG_TYPE typeCall, String roomName) {
+        preparedUserName = Utils.getUserNameByType(typeCall);
+        preparedRoomSize = null;
+        preparedRoomName = roomName;
+        preparedTime = System.currentTimeMillis();
+    }
+
+    private boolean isPrepared(String roomName) {
+        return roomName != null && roomName.equals(preparedRoomName)
+                && System.currentTimeMillis() - preparedTime < PREPARED_CONNECTION_MAX_AGE_MS;
+    }
+
+    private void clearPrepared() {
+        preparedRoomName = null;
+        preparedUserName = null;
+        preparedRoomSize = null;
+    }
+
     /**
      * Disconnects from the room we are currently in.
      * Once disconnect is complete, {@link LifeCycleListener#onDisconnectFromRoom(SkylinkEvent, String)}}
@@ -271,7 +340,7 @@ public class SkylinkConnectionManager {
      *                        they may get warnings and/or not be allowed to join room.
      * @return
      */
-    public String getSkylinkConnectionString(String roomName, Date startTime, int duration,
+    public static String getSkylinkConnectionString(String roomName, Date startTime, int duration,
                                              SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
 
         String info = "Room name: " + roomName + ", startTime: " + startTime +
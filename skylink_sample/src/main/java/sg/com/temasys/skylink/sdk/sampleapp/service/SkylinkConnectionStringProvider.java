@@ -0,0 +1,155 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service;
+
+import android.util.Log;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import sg.com.temasys.skylink.sdk.rtc.SkylinkConfig;
+import sg.com.temasys.skylink.sdk.sampleapp.setting.Config;
+
+/**
+ * Provides signed Skylink connection strings, cached process-wide per App key, room, duration and room size.
+ * A cached connection string is used until shortly before its duration expires.
+ * It is re-signed in a background thread ahead of expiry, so that getting a connection string
+ * on (re)connection normally costs no HMAC computation nor URL parsing.
+ * Signing reuses the Mac instance of the signing thread, see Utils.calculateRFC2104HMAC.
+ * A single instance, and so a single signing thread, is shared by all connection managers.
+ */
+public class SkylinkConnectionStringProvider {
+
+    private final String TAG = SkylinkConnectionStringProvider.class.getName();
+
+    // A connection string is re-signed this long before it expires
+    private static final long REFRESH_MARGIN_MS = 5 * 60 * 1000;
+
+    private static SkylinkConnectionStringProvider instance;
+
+    private final ScheduledExecutorService signingExecutor;
+
+    private final Map<String, SignedConnectionString> cache = new HashMap<>();
+
+    private static class SignedConnectionString {
+        private final String connectionString;
+        private final long refreshTime; // Shortly before expiry
+        private volatile boolean isUsed;
+        private ScheduledFuture<?> refresh;
+
+        private SignedConnectionString(String connectionString, long signingTime, long expiryTime) {
+            this.connectionString = connectionString;
+            this.refreshTime = expiryTime - Math.min(REFRESH_MARGIN_MS, (expiryTime - signingTime) / 10);
+        }
+
+        private boolean isFresh(long now) {
+            return now < refreshTime;
+        }
+    }
+
+    /**
+     * Gets the process-wide provider.
+     */
+    public static synchronized SkylinkConnectionStringProvider getInstance() {
+        if (instance == null) {
+            instance = new SkylinkConnectionStringProvider();
+        }
+        return instance;
+    }
+
+    private SkylinkConnectionStringProvider() {
+        this.signingExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Gets a signed connection string for the room, signing it now only if there is no fresh cached one.
+     *
+     * @param roomName        Name of the room
+     * @param duration        Duration of the room in Hours
+     * @param skylinkRoomSize The size of the room
+     * @return Connection string, or null if it could not be created
+     */
+    public String getConnectionString(String roomName, int duration, SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
+        String key = getKey(roomName, duration, skylinkRoomSize);
+        synchronized (cache) {
+            SignedConnectionString signed = cache.get(key);
+            if (signed != null && signed.isFresh(System.currentTimeMillis())) {
+                signed.isUsed = true;
+                return signed.connectionString;
+            }
+        }
+
+        // Not signed yet (or expired), sign on the caller's thread
+        SignedConnectionString signed = sign(key, roomName, duration, skylinkRoomSize);
+        if (signed == null) return null;
+        signed.isUsed = true;
+        return signed.connectionString;
+    }
+
+    /**
+     * Signs a connection string for the room in the background, unless a fresh one is cached.
+     * E.g. for a room that is going to be connected soon.
+     * A connection string that is not used before it expires is not re-signed again.
+     */
+    public void prefetch(String roomName, int duration, SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
+        String key = getKey(roomName, duration, skylinkRoomSize);
+        synchronized (cache) {
+            SignedConnectionString signed = cache.get(key);
+            if (signed != null && signed.isFresh(System.currentTimeMillis())) return;
+        }
+        signingExecutor.execute(() -> sign(key, roomName, duration, skylinkRoomSize));
+    }
+
+    /**
+     * Drops all cached connection strings, e.g. when the App key changes.
+     */
+    public void clear() {
+        synchronized (cache) {
+            for (SignedConnectionString signed : cache.values()) {
+                if (signed.refresh != null) signed.refresh.cancel(false);
+            }
+            cache.clear();
+        }
+    }
+
+    private SignedConnectionString sign(String key, String roomName, int duration,
+                                        SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
+        Date startTime = new Date();
+        String connectionString = SkylinkConnectionManager.getSkylinkConnectionString(
+                roomName, startTime, duration, skylinkRoomSize);
+        if (connectionString == null) return null;
+
+        SignedConnectionString signed = new SignedConnectionString(connectionString,
+                startTime.getTime(), startTime.getTime() + TimeUnit.HOURS.toMillis(duration));
+
+        synchronized (cache) {
+            SignedConnectionString previous = cache.put(key, signed);
+            if (previous != null && previous.refresh != null) previous.refresh.cancel(false);
+
+            // Re-sign in the background ahead of expiry, as long as the connection string gets used
+            long refreshDelay = Math.max(0, signed.refreshTime - System.currentTimeMillis());
+            signed.refresh = signingExecutor.schedule(() -> refresh(key, signed, roomName, duration, skylinkRoomSize),
+                    refreshDelay, TimeUnit.MILLISECONDS);
+        }
+        return signed;
+    }
+
+    private void refresh(String key, SignedConnectionString signed, String roomName, int duration,
+                         SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
+        if (!signed.isUsed) {
+            synchronized (cache) {
+                if (cache.get(key) == signed) cache.remove(key);
+            }
+            return;
+        }
+        Log.d(TAG, "Re-signing connection string of room " + roomName + " ahead of expiry");
+        sign(key, roomName, duration, skylinkRoomSize);
+    }
+
+    private String getKey(String roomName, int duration, SkylinkConfig.SkylinkRoomSize skylinkRoomSize) {
+        return Config.getAppKey() + "/" + roomName + "/" + duration + "/" + skylinkRoomSize.getValue();
+    }
+}
@@ -0,0 +1,341 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import sg.com.temasys.skylink.sdk.sampleapp.BasePresenter;
+import sg.com.temasys.skylink.sdk.sampleapp.service.model.RemotePeerEvent;
+import sg.com.temasys.skylink.sdk.sampleapp.service.model.SkylinkPeer;
+
+/**
+ * Ring buffer of Skylink events between the SDK callbacks and a presenter.
+ * Callbacks publish events into preallocated slots, so publishing does not allocate,
+ * and return right away instead of waiting for the presenter work.
+ * A single consumer drains the events in publish order on the presenter's executor,
+ * see {@link BasePresenter#getEventExecutor()}.
+ * When the buffer is full, publishing waits for the consumer for up to FULL_WAIT_TIMEOUT_MS,
+ * so that an SDK callback thread is never blocked for long. Then it drops the oldest message event
+ * (see {@link Type#isDroppable}), or the published one if it is a message and there is none queued.
+ * Room and peer events are never dropped: if only those are queued, the buffer grows instead.
+ * Once the consumer is gone (its executor rejects the drain, or the bus is closed),
+ * queued and further events are dropped.
+ * Reports queue depth and dispatch latency metrics.
+ */
+public class SkylinkEventBus {
+
+    private static final String TAG = SkylinkEventBus.class.getName();
+
+    private static final int INITIAL_CAPACITY = 1024; // Power of 2
+    private static final long FULL_WAIT_TIMEOUT_MS = 100;
+
+    public enum Type {
+        ROOM_CONNECTED(false),
+        ROOM_DISCONNECTED(false),
+        ROOM_DISCONNECTED_UNEXPECTEDLY(false),
+        REMOTE_PEER_CONNECTED(false),
+        REMOTE_PEER_DISCONNECTED(false),
+        REMOTE_PEERS_CHANGED(false),
+        SERVER_MESSAGE_RECEIVED(true),
+        P2P_MESSAGE_RECEIVED(true),
+        DATA_RECEIVED(true);
+
+        /**
+         * Can the event be dropped when the consumer falls behind?
+         * Room and peer events cannot, as the presenter's connection state and peer list would get out of sync.
+         */
+        public final boolean isDroppable;
+
+        Type(boolean isDroppable) {
+            this.isDroppable = isDroppable;
+        }
+    }
+
+    /**
+     * Preallocated event slot, reused once consumed.
+     */
+    private static class Event {
+        private Type type;
+        private String peerId;
+        private Object payload;
+        private boolean flag;
+        private Long timestamp;
+        private int index;
+        private long publishTimeNs;
+
+        private void clear() {
+            type = null;
+            peerId = null;
+            payload = null;
+            timestamp = null;
+        }
+    }
+
+    private final Object lock = new Object();
+    private Event[] ring; // guarded by lock
+    private int mask; // Capacity - 1, guarded by lock
+    private long head; // Sequence of the next event to consume, guarded by lock
+    private long tail; // Sequence of the next event to publish, guarded by lock
+    private boolean isDrainScheduled; // guarded by lock
+    private boolean isClosed; // guarded by lock
+
+    private final Event current = new Event(); // Event being dispatched, accessed by the consumer only
+    private final Runnable drain = this::drain;
+
+    private final Context context;
+    private final BasePresenter presenter;
+    private final Executor executor;
+
+    // Metrics, guarded by lock
+    private long publishedCount;
+    private long fullWaitCount;
+    private long droppedCount;
+    private long growCount;
+    private long dispatchedCount;
+    private int maxDepth;
+    private long totalLatencyNs;
+    private long maxLatencyNs;
+
+    /**
+     * @param executor Executor of the consumer, events are dispatched in the publishing thread if null
+     */
+    public SkylinkEventBus(Context context, BasePresenter presenter, Executor executor) {
+        this.context = context;
+        this.presenter = presenter;
+        this.executor = executor != null ? executor : Runnable::run;
+        ring = new Event[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        for (int i = 0; i < INITIAL_CAPACITY; i++) {
+            ring[i] = new Event();
+        }
+    }
+
+    public boolean isFor(BasePresenter presenter) {
+        return this.presenter == presenter;
+    }
+
+    public void publish(Type type) {
+        publish(type, null, null, false, null, 0);
+    }
+
+    /**
+     * Publishes an event, to be dispatched to the presenter on its executor. Can be called from any thread.
+     * Fields that do not apply to the event type are ignored.
+     */
+    public void publish(Type type, String peerId, Object payload, boolean flag, Long timestamp, int index) {
+        boolean isDrainNeeded;
+        synchronized (lock) {
+            if (isClosed) {
+                droppedCount++;
+                return;
+            }
+
+            if (tail - head == ring.length) {
+                fullWaitCount++;
+                long deadlineMs = SystemClock.uptimeMillis() + FULL_WAIT_TIMEOUT_MS;
+                long remainingMs = FULL_WAIT_TIMEOUT_MS;
+                while (tail - head == ring.length && remainingMs > 0 && !isClosed) {
+                    try {
+                        lock.wait(remainingMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remainingMs = deadlineMs - SystemClock.uptimeMillis();
+                }
+
+                if (isClosed) {
+                    droppedCount++;
+                    return;
+                }
+                // Consumer too slow, make room by dropping the oldest message, never a room or peer event
+                if (tail - head == ring.length && !dropOldestDroppable()) {
+                    if (type.isDroppable) {
+                        Log.w(TAG, "Event bus full of room and peer events, dropping " + type);
+                        droppedCount++;
+                        return;
+                    }
+                    grow();
+                }
+            }
+
+            Event event = ring[(int) (tail & mask)];
+            event.type = type;
+            event.peerId = peerId;
+            event.payload = payload;
+            event.flag = flag;
+            event.timestamp = timestamp;
+            event.index = index;
+            event.publishTimeNs = System.nanoTime();
+            tail++;
+            publishedCount++;
+            maxDepth = Math.max(maxDepth, (int) (tail - head));
+
+            isDrainNeeded = !isDrainScheduled;
+            isDrainScheduled = true;
+        }
+
+        if (isDrainNeeded) {
+            try {
+                executor.execute(drain);
+            } catch (RejectedExecutionException e) {
+                // Presenter executor shut down, its events are not wanted anymore
+                close();
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest queued event that is droppable, keeping the order of the others. Must hold the lock.
+     * @return False if no queued event is droppable
+     */
+    private boolean dropOldestDroppable() {
+        for (long sequence = head; sequence != tail; sequence++) {
+            Event dropped = ring[(int) (sequence & mask)];
+            if (!dropped.type.isDroppable) continue;
+
+            Log.w(TAG, "Event bus full, dropping the oldest " + dropped.type);
+            // Shift the older events up by one slot, reusing the dropped slot as the new head
+            for (long i = sequence; i != head; i--) {
+                ring[(int) (i & mask)] = ring[(int) ((i - 1) & mask)];
+            }
+            ring[(int) (head & mask)] = dropped;
+            dropped.clear();
+            head++;
+            droppedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Doubles the capacity, keeping the queued events at their sequences. Must hold the lock.
+     */
+    private void grow() {
+        Event[] grown = new Event[ring.length * 2];
+        int grownMask = grown.length - 1;
+        for (long sequence = head; sequence != tail; sequence++) {
+            grown[(int) (sequence & grownMask)] = ring[(int) (sequence & mask)];
+        }
+        for (int i = 0; i < grown.length; i++) {
+            if (grown[i] == null) grown[i] = new Event();
+        }
+        Log.w(TAG, "Event bus full of room and peer events, growing to " + grown.length + " events");
+        ring = grown;
+        mask = grownMask;
+        growCount++;
+    }
+
+    /**
+     * Drops the queued events and any event published afterwards, e.g. when the presenter exits
+     * and shuts its executor down, which discards a scheduled drain. Can be called from any thread.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (isClosed) return;
+            isClosed = true;
+            droppedCount += tail - head;
+            while (head != tail) {
+                ring[(int) (head & mask)].clear();
+                head++;
+            }
+            isDrainScheduled = false;
+            lock.notifyAll(); // Release publishers waiting for a free slot
+        }
+    }
+
+    public int getDepth() {
+        synchronized (lock) {
+            return (int) (tail - head);
+        }
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return "published: " + publishedCount + ", depth: " + (tail - head) + ", max depth: " + maxDepth
+                    + ", waits when full: " + fullWaitCount + ", dropped: " + droppedCount + ", grown: " + growCount
+                    + ", average latency: " + (dispatchedCount == 0 ? 0 : totalLatencyNs / dispatchedCount / 1000) + " us"
+                    + ", max latency: " + maxLatencyNs / 1000 + " us";
+        }
+    }
+
+    /**
+     * Dispatches the published events in order, until the buffer is empty.
+     */
+    private void drain() {
+        while (true) {
+            synchronized (lock) {
+                if (head == tail || isClosed) {
+                    isDrainScheduled = false;
+                    return;
+                }
+
+                // Copy out the event, so that its slot can be reused while dispatching
+                Event event = ring[(int) (head & mask)];
+                current.type = event.type;
+                current.peerId = event.peerId;
+                current.payload = event.payload;
+                current.flag = event.flag;
+                current.timestamp = event.timestamp;
+                current.index = event.index;
+                event.clear();
+                head++;
+                dispatchedCount++;
+
+                long latencyNs = System.nanoTime() - event.publishTimeNs;
+                totalLatencyNs += latencyNs;
+                maxLatencyNs = Math.max(maxLatencyNs, latencyNs);
+                lock.notifyAll(); // Wake up publishers waiting for a free slot
+            }
+
+            try {
+                dispatch(current);
+            } catch (RuntimeException e) {
+                // Let the next publish schedule a new drain
+                synchronized (lock) {
+                    isDrainScheduled = false;
+                }
+                throw e;
+            } finally {
+                current.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(Event event) {
+        switch (event.type) {
+            case ROOM_CONNECTED:
+                presenter.processRoomConnected(event.flag);
+                break;
+            case ROOM_DISCONNECTED:
+                presenter.processRoomDisconnected();
+                break;
+            case ROOM_DISCONNECTED_UNEXPECTEDLY:
+                presenter.processRoomDisconnectedUnexpectedly((String) event.payload);
+                break;
+            case REMOTE_PEER_CONNECTED:
+                presenter.processRemotePeerConnected((SkylinkPeer) event.payload);
+                break;
+            case REMOTE_PEER_DISCONNECTED:
+                presenter.processRemotePeerDisconnected((SkylinkPeer) event.payload, event.index);
+                break;
+            case REMOTE_PEERS_CHANGED:
+                presenter.processRemotePeersChanged((List<RemotePeerEvent>) event.payload);
+                break;
+            case SERVER_MESSAGE_RECEIVED:
+                presenter.processServerMessageReceived(event.peerId, event.payload, event.flag, event.timestamp);
+                break;
+            case P2P_MESSAGE_RECEIVED:
+                presenter.processP2PMessageReceived(event.peerId, event.payload, event.flag);
+                break;
+            case DATA_RECEIVED:
+                presenter.processDataReceive(context, event.peerId, (byte[]) event.payload);
+                break;
+        }
+    }
+}
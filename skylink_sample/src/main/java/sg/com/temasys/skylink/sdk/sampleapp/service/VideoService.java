@@ -327,7 +327,7 @@ public class VideoService extends SkylinkCommonService implements VideoContract.
      * Get the info of a peer in specific index
      */
     public SkylinkPeer getPeerByIndex(int index) {
-        return mPeersList.get(index);
+        return peerRegistry.getSnapshot().get(index);
     }
 
     public void switchCamera() {
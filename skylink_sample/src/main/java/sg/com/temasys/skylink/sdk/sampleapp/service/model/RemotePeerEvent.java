@@ -0,0 +1,42 @@
+package sg.com.temasys.skylink.sdk.sampleapp.service.model;
+
+/**
+ * A remote peer joining or leaving the room, held back while the room is in a join/leave storm
+ * and delivered later in order, together with the other joins and leaves of the storm.
+ */
+public class RemotePeerEvent {
+
+    // True if the peer joined, false if it left
+    private final boolean isJoin;
+
+    private final SkylinkPeer peer;
+
+    // Index of the leaving peer in the view, as for BasePresenter.processRemotePeerDisconnected
+    private final int removeIndex;
+
+    private RemotePeerEvent(boolean isJoin, SkylinkPeer peer, int removeIndex) {
+        this.isJoin = isJoin;
+        this.peer = peer;
+        this.removeIndex = removeIndex;
+    }
+
+    public static RemotePeerEvent joined(SkylinkPeer peer) {
+        return new RemotePeerEvent(true, peer, -1);
+    }
+
+    public static RemotePeerEvent left(SkylinkPeer peer, int removeIndex) {
+        return new RemotePeerEvent(false, peer, removeIndex);
+    }
+
+    public boolean isJoin() {
+        return isJoin;
+    }
+
+    public SkylinkPeer getPeer() {
+        return peer;
+    }
+
+    public int getRemoveIndex() {
+        return removeIndex;
+    }
+}
@@ -1,7 +1,11 @@
 package sg.com.temasys.skylink.sdk.sampleapp.service.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import sg.com.temasys.skylink.sdk.rtc.SkylinkMedia;
@@ -13,6 +17,10 @@ public class SkylinkPeer implements Serializable {
     // The map to keep track of media(audio, video, screen) object belongs to the peer
     private Map<String, SkylinkMedia> mediaMap;
 
+    // Secondary index of mediaMap by media type, each list in the order the media were added
+    private final Map<SkylinkMedia.MediaType, List<SkylinkMedia>> mediaByType =
+            new EnumMap<SkylinkMedia.MediaType, List<SkylinkMedia>>(SkylinkMedia.MediaType.class);
+
     public SkylinkPeer() {
     }
 
@@ -41,12 +49,23 @@ public class SkylinkPeer implements Serializable {
         this.peerName = peerName;
     }
 
+    /**
+     * Get the media of the peer by media id.
+     * The map should only be changed with addMedia, updateMedia and removeMediaId, so that the type index is kept in sync.
+     */
     public Map<String, SkylinkMedia> getMediaMap() {
         return mediaMap;
     }
 
     public void setMediaMap(Map<String, SkylinkMedia> mediaMap) {
         this.mediaMap = mediaMap;
+
+        mediaByType.clear();
+        if (mediaMap != null) {
+            for (SkylinkMedia media : mediaMap.values()) {
+                indexMedia(media);
+            }
+        }
     }
 
     @Override
@@ -59,7 +78,8 @@ public class SkylinkPeer implements Serializable {
             mediaMap = new HashMap<String, SkylinkMedia>();
         }
 
-        mediaMap.put(media.getMediaId(), media);
+        SkylinkMedia previousMedia = mediaMap.put(media.getMediaId(), media);
+        replaceIndexedMedia(previousMedia, media);
     }
 
     public void updateMedia(SkylinkMedia remoteMedia) {
@@ -67,58 +87,108 @@ public class SkylinkPeer implements Serializable {
             mediaMap = new HashMap<String, SkylinkMedia>();
         }
 
-        mediaMap.put(remoteMedia.getMediaId(), remoteMedia);
+        SkylinkMedia previousMedia = mediaMap.put(remoteMedia.getMediaId(), remoteMedia);
+        replaceIndexedMedia(previousMedia, remoteMedia);
     }
 
     public SkylinkMedia removeMediaId(String mediaId) {
         if (mediaMap == null) {
             return null;
         }
-        return mediaMap.remove(mediaId);
+
+        SkylinkMedia removedMedia = mediaMap.remove(mediaId);
+        if (removedMedia != null) {
+            unindexMedia(removedMedia);
+        }
+        return removedMedia;
+    }
+
+    /**
+     * Get the media objects of a type, in the order they were added
+     *
+     * @return unmodifiable list of media, empty if the peer has no media of the type
+     */
+    public List<SkylinkMedia> getMediaList(SkylinkMedia.MediaType mediaType) {
+        List<SkylinkMedia> mediaList = mediaByType.get(mediaType);
+        if (mediaList == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(mediaList);
     }
 
     /**
      * Get the first audio object in the mediaMap
      */
     public SkylinkMedia getAudio() {
-        if (mediaMap == null || mediaMap.size() == 0)
-            return null;
+        SkylinkMedia media = getFirstMedia(SkylinkMedia.MediaType.AUDIO_MIC);
+        if (media != null)
+            return media;
 
-        for (SkylinkMedia media : mediaMap.values()) {
-            if (!media.isVideo())
-                return media;
-        }
-
-        return null;
+        return getFirstMedia(SkylinkMedia.MediaType.AUDIO);
     }
 
     /**
      * Get the first video camera object in the mediaMap
      */
     public SkylinkMedia getVideo() {
-        if (mediaMap == null || mediaMap.size() == 0)
-            return null;
+        SkylinkMedia media = getFirstMedia(SkylinkMedia.MediaType.VIDEO_CAMERA);
+        if (media != null)
+            return media;
 
-        for (SkylinkMedia media : mediaMap.values()) {
-            if (media.getMediaType() == SkylinkMedia.MediaType.VIDEO_CAMERA || media.getMediaType() == SkylinkMedia.MediaType.VIDEO)
-                return media;
-        }
-
-        return null;
+        return getFirstMedia(SkylinkMedia.MediaType.VIDEO);
     }
 
     /**
      * Get the first video screen object in the mediaMap
      */
     public SkylinkMedia getScreen() {
-        if (mediaMap == null || mediaMap.size() == 0)
+        return getFirstMedia(SkylinkMedia.MediaType.VIDEO_SCREEN);
+    }
+
+    private SkylinkMedia getFirstMedia(SkylinkMedia.MediaType mediaType) {
+        List<SkylinkMedia> mediaList = mediaByType.get(mediaType);
+        if (mediaList == null || mediaList.isEmpty())
             return null;
 
-        for (SkylinkMedia media : mediaMap.values()) {
-            if (media.getMediaType() == SkylinkMedia.MediaType.VIDEO_SCREEN)
-                return media;
+        return mediaList.get(0);
+    }
+
+    /**
+     * Replace a media in the type index, keeping its position if its type is unchanged
+     */
+    private void replaceIndexedMedia(SkylinkMedia previousMedia, SkylinkMedia media) {
+        if (previousMedia != null && previousMedia.getMediaType() == media.getMediaType()) {
+            List<SkylinkMedia> mediaList = mediaByType.get(media.getMediaType());
+            int index = mediaList.indexOf(previousMedia);
+            if (index != -1) {
+                mediaList.set(index, media);
+                return;
+            }
+        }
+
+        if (previousMedia != null) {
+            unindexMedia(previousMedia);
+        }
+        indexMedia(media);
+    }
+
+    private void indexMedia(SkylinkMedia media) {
+        if (media.getMediaType() == null) {
+            return;
         }
 
-        return null;
+        List<SkylinkMedia> mediaList = mediaByType.get(media.getMediaType());
+        if (mediaList == null) {
+            mediaList = new ArrayList<SkylinkMedia>(1);
+            mediaByType.put(media.getMediaType(), mediaList);
+        }
+        mediaList.add(media);
+    }
+
+    private void unindexMedia(SkylinkMedia media) {
+        List<SkylinkMedia> mediaList = mediaByType.get(media.getMediaType());
+        if (mediaList != null) {
+            mediaList.remove(media);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,239 @@
+package sg.com.temasys.skylink.sdk.sampleapp.utils;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps a cached snapshot of the network reachability, updated by connectivity callbacks
+ * instead of querying the {@link ConnectivityManager} on every check.
+ * Reading the snapshot is free, so it can be done on the connect path.
+ * Uses the default network callback from API 24, and connectivity broadcasts before that.
+ */
+public class NetworkReachabilityMonitor {
+
+    private static final String TAG = NetworkReachabilityMonitor.class.getName();
+
+    private static NetworkReachabilityMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile NetworkSnapshot snapshot;
+
+    public enum Transport {
+        NONE, WIFI, CELLULAR, ETHERNET, VPN, BLUETOOTH, OTHER
+    }
+
+    /**
+     * Immutable state of the network at a point in time.
+     */
+    public static class NetworkSnapshot {
+        public static final int UNKNOWN_BANDWIDTH = -1;
+
+        public final boolean isConnected;
+        public final Transport transport;
+        public final boolean isMetered;
+        public final int downstreamBandwidthKbps; // Estimated, UNKNOWN_BANDWIDTH if not known
+        public final int upstreamBandwidthKbps; // Estimated, UNKNOWN_BANDWIDTH if not known
+
+        public NetworkSnapshot(boolean isConnected, Transport transport, boolean isMetered,
+                               int downstreamBandwidthKbps, int upstreamBandwidthKbps) {
+            this.isConnected = isConnected;
+            this.transport = transport;
+            this.isMetered = isMetered;
+            this.downstreamBandwidthKbps = downstreamBandwidthKbps;
+            this.upstreamBandwidthKbps = upstreamBandwidthKbps;
+        }
+
+        private static final NetworkSnapshot DISCONNECTED =
+                new NetworkSnapshot(false, Transport.NONE, false, UNKNOWN_BANDWIDTH, UNKNOWN_BANDWIDTH);
+
+        @Override
+        public String toString() {
+            return "connected: " + isConnected + ", transport: " + transport + ", metered: " + isMetered
+                    + ", bandwidth: " + downstreamBandwidthKbps + "/" + upstreamBandwidthKbps + " kbps";
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called in the main thread when the network snapshot changes.
+         */
+        void onNetworkChanged(NetworkSnapshot previous, NetworkSnapshot current);
+    }
+
+    /**
+     * Gets the process-wide monitor, which starts monitoring when first created.
+     */
+    public static synchronized NetworkReachabilityMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new NetworkReachabilityMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NetworkReachabilityMonitor(Context context) {
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        snapshot = readActiveNetwork();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            registerDefaultNetworkCallback();
+        } else {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    update(readActiveNetwork());
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    /**
+     * Gets the latest network snapshot, without querying the system.
+     */
+    public NetworkSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Checks whether a network is connected or still connecting.
+     * Reads the snapshot while connected, and only queries the system otherwise,
+     * as the snapshot does not report networks that are still connecting.
+     */
+    public boolean isConnectedOrConnecting() {
+        if (snapshot.isConnected) return true;
+        if (connectivityManager == null) return false;
+
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnectedOrConnecting();
+    }
+
+    /**
+     * Adds a listener, unless it is added already.
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void registerDefaultNetworkCallback() {
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            // Current default network, accessed in the callback thread only
+            private Network defaultNetwork;
+
+            @Override
+            public void onAvailable(Network network) {
+                defaultNetwork = network;
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                defaultNetwork = network;
+                update(fromCapabilities(capabilities));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                // A previous default network lost after a handover, e.g. from Wi-Fi to cellular, is not a disconnection
+                if (defaultNetwork != null && !defaultNetwork.equals(network)) return;
+
+                defaultNetwork = null;
+                update(NetworkSnapshot.DISCONNECTED);
+            }
+        });
+    }
+
+    private void update(NetworkSnapshot current) {
+        NetworkSnapshot previous = snapshot;
+        snapshot = current;
+        if (previous.isConnected == current.isConnected && previous.transport == current.transport
+                && previous.isMetered == current.isMetered) {
+            return; // Bandwidth estimates alone change too often to be worth notifying
+        }
+
+        Log.d(TAG, "Network changed: " + current);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onNetworkChanged(previous, current);
+            }
+        });
+    }
+
+    /**
+     * Queries the active network once, for the initial snapshot and on connectivity broadcasts.
+     */
+    private NetworkSnapshot readActiveNetwork() {
+        if (connectivityManager == null) return NetworkSnapshot.DISCONNECTED;
+
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnectedOrConnecting()) return NetworkSnapshot.DISCONNECTED;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+            if (capabilities != null) return fromCapabilities(capabilities);
+        }
+
+        Transport transport;
+        switch (networkInfo.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                transport = Transport.WIFI;
+                break;
+            case ConnectivityManager.TYPE_MOBILE:
+                transport = Transport.CELLULAR;
+                break;
+            case ConnectivityManager.TYPE_ETHERNET:
+                transport = Transport.ETHERNET;
+                break;
+            case ConnectivityManager.TYPE_BLUETOOTH:
+                transport = Transport.BLUETOOTH;
+                break;
+            default:
+                transport = Transport.OTHER;
+                break;
+        }
+        return new NetworkSnapshot(true, transport, connectivityManager.isActiveNetworkMetered(),
+                NetworkSnapshot.UNKNOWN_BANDWIDTH, NetworkSnapshot.UNKNOWN_BANDWIDTH);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static NetworkSnapshot fromCapabilities(NetworkCapabilities capabilities) {
+        Transport transport;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            transport = Transport.VPN;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            transport = Transport.WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            transport = Transport.CELLULAR;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            transport = Transport.ETHERNET;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_BLUETOOTH)) {
+            transport = Transport.BLUETOOTH;
+        } else {
+            transport = Transport.OTHER;
+        }
+        boolean isConnected = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        boolean isMetered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        return new NetworkSnapshot(isConnected, transport, isMetered,
+                capabilities.getLinkDownstreamBandwidthKbps(), capabilities.getLinkUpstreamBandwidthKbps());
+    }
+}
@@ -9,7 +9,6 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.MediaScannerConnection;
-import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
@@ -137,6 +136,19 @@ public class Utils {
     private static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
     private static final String EXTERNAL_STORAGE = "ExternalStorage";
 
+    // Mac and DateFormat instances are not thread safe, so each thread keeps its own.
+    // A thread's Mac is initialized again only when the signing key changes.
+    private static final ThreadLocal<Mac> hmacMac = new ThreadLocal<>();
+    private static final ThreadLocal<String> hmacKey = new ThreadLocal<>();
+    private static final ThreadLocal<DateFormat> isoDateFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat df = new SimpleDateFormat(ISO_TIME_FORMAT);
+            df.setTimeZone(TimeZone.getTimeZone(TIME_ZONE_UTC));
+            return df;
+        }
+    };
+
     // sample file name to be transfered
     public static String SAMPLE_FILE_NAME = "FileTransfer.png";
     public static String SAMPLE_DATA_NAME = "DataTransfer.png";
@@ -155,6 +167,9 @@ public class Utils {
     public Utils(Context context) {
         this.context = context;
         sharedPref = Utils.context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        // Start monitoring the network early, so the first connect reads an up-to-date snapshot
+        NetworkReachabilityMonitor.getInstance(context);
     }
 
     /**
@@ -168,15 +183,21 @@ public class Utils {
         String result = null;
         try {
 
-            // Get an hmac_sha1 key from the raw key bytes
-            SecretKeySpec signingKey = new SecretKeySpec(key.getBytes(),
-                    HMAC_SHA1_ALGORITHM);
-
-            // Get an hmac_sha1 Mac instance and initialize with the signing key
-            Mac mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
-            mac.init(signingKey);
+            // Reuse this thread's hmac_sha1 Mac instance if it was initialized with the same key
+            Mac mac = hmacMac.get();
+            if (mac == null || !key.equals(hmacKey.get())) {
+                // Get an hmac_sha1 key from the raw key bytes
+                SecretKeySpec signingKey = new SecretKeySpec(key.getBytes(),
+                        HMAC_SHA1_ALGORITHM);
+
+                // Get an hmac_sha1 Mac instance and initialize with the signing key
+                mac = Mac.getInstance(HMAC_SHA1_ALGORITHM);
+                mac.init(signingKey);
+                hmacMac.set(mac);
+                hmacKey.set(key);
+            }
 
-            // Compute the hmac on input data bytes
+            // Compute the hmac on input data bytes, doFinal also resets the Mac for the next use
             byte[] rawHmac = mac.doFinal(data.getBytes());
 
             // Base64-encode the hmac
@@ -185,6 +206,8 @@ public class Utils {
 
         } catch (Exception e) {
             Log.e(TAG, "Failed to generate HMAC : " + e.getMessage(), e);
+            hmacMac.remove();
+            hmacKey.remove();
         }
         return result.substring(0, result.length() - 1);
     }
@@ -196,10 +219,7 @@ public class Utils {
      * @return ISO timestamp
      */
     public static String getISOTimeStamp(Date date) {
-        TimeZone tz = TimeZone.getTimeZone(TIME_ZONE_UTC);
-        DateFormat df = new SimpleDateFormat(ISO_TIME_FORMAT);
-        df.setTimeZone(tz);
-        return df.format(date);
+        return isoDateFormat.get().format(date);
     }
 
     /**
@@ -823,30 +843,16 @@ public class Utils {
         return null;
     }
 
+    /**
+     * Checks whether a network is connected or still connecting, on any transport.
+     * Reads the snapshot cached by {@link NetworkReachabilityMonitor}, so it does not query the system while connected.
+     */
     public static boolean isInternetOn() {
 
         if (context == null)
             return false;
 
-        // get Connectivity Manager object to check connection
-        ConnectivityManager connec =
-                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-
-        // Check for network connections
-        if (connec.getNetworkInfo(0).getState() == android.net.NetworkInfo.State.CONNECTED ||
-                connec.getNetworkInfo(0).getState() == android.net.NetworkInfo.State.CONNECTING ||
-                connec.getNetworkInfo(1).getState() == android.net.NetworkInfo.State.CONNECTING ||
-                connec.getNetworkInfo(1).getState() == android.net.NetworkInfo.State.CONNECTED) {
-
-            return true;
-
-        } else if (
-                connec.getNetworkInfo(0).getState() == android.net.NetworkInfo.State.DISCONNECTED ||
-                        connec.getNetworkInfo(1).getState() == android.net.NetworkInfo.State.DISCONNECTED) {
-
-            return false;
-        }
-        return false;
+        return NetworkReachabilityMonitor.getInstance(context).isConnectedOrConnecting();
     }
 
     // default value for speaker is true